@@ -0,0 +1,77 @@
+package org.xu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.remoting.dto.RpcRequest;
+import org.xu.remoting.dto.RpcResponse;
+import org.xu.remoting.transport.netty.client.NettyRpcClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 小请求的吞吐量：逐个 writeAndFlush 和批量写入只 flush 一次对比，分别在开启和关闭合并 flush 时测试。
+ * 分数按单次调用计算
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+    private static final int BATCH_SIZE = 64;
+
+    @Param({"false", "true"})
+    private String flushConsolidation;
+
+    private LoopbackServer loopbackServer;
+    private NettyRpcClient nettyRpcClient;
+    private List<RpcRequest> rpcRequests;
+
+    @Setup
+    public void setup() throws Exception {
+        System.setProperty(RpcConfigEnum.FLUSH_CONSOLIDATION.getPropertyValue(), flushConsolidation);
+        System.setProperty(RpcConfigEnum.COMPRESS_TYPE.getPropertyValue(), "none");
+        loopbackServer = new LoopbackServer();
+        nettyRpcClient = new NettyRpcClient();
+        rpcRequests = Collections.nCopies(BATCH_SIZE, BenchmarkData.rpcRequest(64));
+        single(); // 提前建立连接，完成握手
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        nettyRpcClient.close();
+        loopbackServer.close();
+    }
+
+    /**
+     * 每个请求单独 writeAndFlush
+     */
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object single() {
+        List<CompletableFuture<?>> futures = new ArrayList<>(BATCH_SIZE);
+        for (RpcRequest rpcRequest : rpcRequests) {
+            futures.add((CompletableFuture<?>) nettyRpcClient.sendRpcRequest(rpcRequest));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * 一批请求一起写入，只 flush 一次
+     */
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object batch() {
+        List<CompletableFuture<RpcResponse<Object>>> futures = nettyRpcClient.sendRpcRequests(rpcRequests);
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+}
@@ -0,0 +1,47 @@
+package org.xu.benchmark;
+
+import org.xu.Hello;
+import org.xu.HelloService;
+import org.xu.remoting.dto.RpcRequest;
+import org.xu.remoting.dto.RpcResponse;
+
+import java.util.Arrays;
+
+/**
+ * 压测使用的请求和响应数据
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * 字符串长度为 size 的消息
+     */
+    public static String text(int size) {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+
+    /**
+     * 调用 HelloService.sayHello 的请求，参数的消息长度约为 payloadSize
+     */
+    public static RpcRequest rpcRequest(int payloadSize) {
+        return RpcRequest.builder()
+                .interfaceName(HelloService.class.getName())
+                .methodName("sayHello")
+                .parameters(new Object[]{new Hello(text(payloadSize), "benchmark")})
+                .paramTypes(new Class<?>[]{Hello.class})
+                .group("")
+                .version("")
+                .build();
+    }
+
+    /**
+     * 返回值长度为 payloadSize 的响应
+     */
+    public static RpcResponse<Object> rpcResponse(int payloadSize) {
+        return RpcResponse.success(text(payloadSize));
+    }
+}
@@ -0,0 +1,14 @@
+package org.xu.benchmark;
+
+import org.xu.Hello;
+import org.xu.HelloService;
+
+/**
+ * 压测使用的服务实现，不做任何额外的工作，只测量框架本身的开销
+ */
+public class BenchmarkHelloService implements HelloService {
+    @Override
+    public String sayHello(Hello hello) {
+        return hello.getMessage();
+    }
+}
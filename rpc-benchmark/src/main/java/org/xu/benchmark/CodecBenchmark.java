@@ -0,0 +1,105 @@
+package org.xu.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+import org.xu.enums.CompressTypeEnum;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.SerializationTypeEnum;
+import org.xu.factory.SingletonFactory;
+import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.RpcMessage;
+import org.xu.remoting.transport.netty.codec.EncodedSizeEstimator;
+import org.xu.remoting.transport.netty.codec.RpcMessageDecoder;
+import org.xu.remoting.transport.netty.codec.RpcMessageEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RpcMessage 经过 RpcMessageEncoder/RpcMessageDecoder 编解码的耗时（EmbeddedChannel，不经过网络）
+ */
+@Slf4j
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"NONE", "GZIP", "LZ4", "ZSTD"})
+    public String compressType;
+
+    @Param({"64", "16384"})
+    public int payloadSize;
+
+    private EmbeddedChannel channel;
+    private RpcMessage request;
+    private RpcMessage response;
+    private ByteBuf encodedRequest;
+    private ByteBuf encodedResponse;
+
+    @Setup
+    public void setup() {
+        // 压缩阈值设为 0，让 payloadSize 决定压缩的效果
+        System.setProperty(RpcConfigEnum.COMPRESS_THRESHOLD.getPropertyValue(), "0");
+        channel = new EmbeddedChannel(new RpcMessageEncoder(), new RpcMessageDecoder());
+        byte compress = CompressTypeEnum.valueOf(compressType).getCode();
+        request = RpcMessage.builder().messageType(RpcConstants.REQUEST_TYPE)
+                .codec(SerializationTypeEnum.KRYO.getCode()).compress(compress)
+                .data(BenchmarkData.rpcRequest(payloadSize)).build();
+        response = RpcMessage.builder().messageType(RpcConstants.RESPONSE_TYPE)
+                .codec(SerializationTypeEnum.KRYO.getCode()).compress(compress)
+                .data(BenchmarkData.rpcResponse(payloadSize)).build();
+        encodedRequest = encode(request);
+        encodedResponse = encode(response);
+    }
+
+    @TearDown
+    public void tearDown() {
+        encodedRequest.release();
+        encodedResponse.release();
+        channel.finish();
+        EncodedSizeEstimator sizeEstimator = SingletonFactory.getInstance(EncodedSizeEstimator.class);
+        log.info("encoded messages: {}, buffer estimate exceeded: {}",
+                sizeEstimator.getEncodedCount(), sizeEstimator.getExceededCount());
+    }
+
+    @Benchmark
+    public int encodeRequest() {
+        ByteBuf encoded = encode(request);
+        int length = encoded.readableBytes();
+        encoded.release();
+        return length;
+    }
+
+    @Benchmark
+    public Object decodeRequest() {
+        return decode(encodedRequest);
+    }
+
+    @Benchmark
+    public int encodeResponse() {
+        ByteBuf encoded = encode(response);
+        int length = encoded.readableBytes();
+        encoded.release();
+        return length;
+    }
+
+    @Benchmark
+    public Object decodeResponse() {
+        return decode(encodedResponse);
+    }
+
+    private ByteBuf encode(RpcMessage rpcMessage) {
+        channel.writeOutbound(rpcMessage);
+        return channel.readOutbound();
+    }
+
+    private Object decode(ByteBuf encoded) {
+        // duplicate 和 encoded 共享引用计数，retain 之后解码器的释放不会影响 encoded
+        channel.writeInbound(encoded.duplicate().retain());
+        return channel.readInbound();
+    }
+}
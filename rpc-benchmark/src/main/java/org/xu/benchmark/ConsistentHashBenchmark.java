@@ -0,0 +1,61 @@
+package org.xu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.xu.HelloService;
+import org.xu.loadbalance.LoadBalance;
+import org.xu.loadbalance.loadbalancer.ConsistentHashLoadBalance;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.remoting.dto.RpcRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一致性哈希选择地址的耗时，每个地址 160 个虚拟节点。加上 -prof gc 可以看到选择过程不分配对象
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConsistentHashBenchmark {
+
+    private static final int KEY_COUNT = 1024; // 轮流使用的参数个数，2 的幂
+
+    @Param({"100"})
+    private int nodes;
+
+    private LoadBalance loadBalance;
+    private List<ServiceEndpoint> serviceEndpoints;
+    private RpcRequest[] rpcRequests;
+    private int next;
+
+    @Setup
+    public void setup() {
+        loadBalance = new ConsistentHashLoadBalance();
+        serviceEndpoints = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            serviceEndpoints.add(ServiceEndpoint.of("10.0." + (i / 256) + "." + (i % 256) + ":9998"));
+        }
+        rpcRequests = new RpcRequest[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            rpcRequests[i] = RpcRequest.builder()
+                    .interfaceName(HelloService.class.getName())
+                    .methodName("find")
+                    .parameters(new Object[]{"user-" + i, i})
+                    .paramTypes(new Class<?>[]{String.class, int.class})
+                    .group("")
+                    .version("")
+                    .build();
+        }
+        loadBalance.selectServiceAddress(serviceEndpoints, rpcRequests[0]); // 提前建好哈希环
+    }
+
+    @Benchmark
+    public ServiceEndpoint select() {
+        RpcRequest rpcRequest = rpcRequests[next++ & (KEY_COUNT - 1)];
+        return loadBalance.selectServiceAddress(serviceEndpoints, rpcRequest);
+    }
+}
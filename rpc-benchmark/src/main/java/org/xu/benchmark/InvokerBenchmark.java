@@ -0,0 +1,50 @@
+package org.xu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.xu.HelloService;
+import org.xu.provider.MethodInvoker;
+import org.xu.provider.ServiceInvoker;
+import org.xu.remoting.dto.RpcRequest;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端调用目标方法的耗时：每次 getMethod 再反射调用（原来的方式）和注册时建立好的 MethodHandle 索引
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InvokerBenchmark {
+
+    private Object service;
+    private ServiceInvoker serviceInvoker;
+    private RpcRequest rpcRequest;
+
+    @Setup
+    public void setup() {
+        service = new BenchmarkHelloService();
+        serviceInvoker = new ServiceInvoker(HelloService.class.getCanonicalName(), HelloService.class, service);
+        rpcRequest = BenchmarkData.rpcRequest(64);
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        Method method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
+        return method.invoke(service, rpcRequest.getParameters());
+    }
+
+    @Benchmark
+    public Object methodHandleByName() throws Throwable {
+        MethodInvoker methodInvoker = serviceInvoker.getMethodInvoker(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
+        return methodInvoker.invoke(rpcRequest.getParameters());
+    }
+
+    @Benchmark
+    public Object methodHandleById() throws Throwable {
+        return serviceInvoker.getMethodInvoker(0).invoke(rpcRequest.getParameters());
+    }
+}
@@ -0,0 +1,56 @@
+package org.xu.benchmark;
+
+import org.xu.config.RpcServiceConfig;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.ServiceRegistryEnum;
+import org.xu.remoting.transport.netty.server.NettyRpcServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * 压测用的本机服务端：提供 BenchmarkHelloService 的 NettyRpcServer，客户端通过直连注册中心找到它，不需要 zookeeper。
+ * 需要修改的配置要在创建之前通过系统属性设置好
+ */
+final class LoopbackServer implements Closeable {
+
+    private static final long SERVER_START_TIMEOUT_MILLIS = 30_000;
+
+    private final NettyRpcServer nettyRpcServer;
+
+    LoopbackServer() throws Exception {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLocalHost().getHostAddress(), NettyRpcServer.PORT);
+        System.setProperty(RpcConfigEnum.REGISTRY.getPropertyValue(), ServiceRegistryEnum.DIRECT.getName());
+        System.setProperty(RpcConfigEnum.REGISTRY_DIRECT_ADDRESSES.getPropertyValue(),
+                address.getHostString() + ":" + address.getPort());
+        nettyRpcServer = new NettyRpcServer();
+        RpcServiceConfig rpcServiceConfig = new RpcServiceConfig();
+        rpcServiceConfig.setService(new BenchmarkHelloService());
+        nettyRpcServer.registerService(rpcServiceConfig);
+        Thread serverThread = new Thread(nettyRpcServer::start, "benchmark-netty-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        waitForServer(address);
+    }
+
+    @Override
+    public void close() throws IOException {
+        nettyRpcServer.stop();
+    }
+
+    private static void waitForServer(InetSocketAddress address) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + SERVER_START_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.connect(address, 1000);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("Netty rpc server did not start in time: " + address);
+    }
+}
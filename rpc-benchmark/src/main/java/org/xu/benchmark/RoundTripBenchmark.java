@@ -0,0 +1,92 @@
+package org.xu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.xu.Hello;
+import org.xu.HelloService;
+import org.xu.config.RpcServiceConfig;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.proxy.RpcClientProxy;
+import org.xu.remoting.transport.netty.client.NettyRpcClient;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一个进程内的客户端和服务端通过本机网络完成一次完整调用的吞吐量和延迟分布（p50/p99/p999）。
+ * 服务端见 {@link LoopbackServer}，客户端通过直连注册中心找到它，不依赖 zookeeper 等外部环境
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+
+    private static final int FAN_OUT = 64; // 单线程异步并发发出的调用数
+
+    @Param({"event-executor", "virtual-thread"})
+    private String executionMode;
+
+    private LoopbackServer loopbackServer;
+    private NettyRpcClient nettyRpcClient;
+    private RpcClientProxy rpcClientProxy;
+    private HelloService helloService;
+    private Method sayHelloMethod;
+    private Hello hello;
+
+    @Setup
+    public void setup() throws Exception {
+        System.setProperty(RpcConfigEnum.SERVER_EXECUTION_MODE.getPropertyValue(), executionMode);
+        // 服务端
+        loopbackServer = new LoopbackServer();
+        // 客户端
+        nettyRpcClient = new NettyRpcClient();
+        rpcClientProxy = new RpcClientProxy(nettyRpcClient, new RpcServiceConfig());
+        helloService = rpcClientProxy.getProxy(HelloService.class);
+        sayHelloMethod = HelloService.class.getMethod("sayHello", Hello.class);
+        hello = new Hello("hello", "benchmark");
+        helloService.sayHello(hello); // 提前建立连接
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        nettyRpcClient.close();
+        loopbackServer.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String roundTripThreads1() {
+        return helloService.sayHello(hello);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String roundTripThreads16() {
+        return helloService.sayHello(hello);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String roundTripThreads64() {
+        return helloService.sayHello(hello);
+    }
+
+    /**
+     * 一个线程异步发出 FAN_OUT 个调用再等待全部返回，分数按单次调用计算
+     */
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(FAN_OUT)
+    public Object fanOutAsync64() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[FAN_OUT];
+        Object[] args = {hello};
+        for (int i = 0; i < FAN_OUT; i++) {
+            futures[i] = rpcClientProxy.invokeAsync(sayHelloMethod, args);
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+}
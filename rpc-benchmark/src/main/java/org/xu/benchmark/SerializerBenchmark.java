@@ -0,0 +1,83 @@
+package org.xu.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.xu.enums.SerializationTypeEnum;
+import org.xu.extension.ExtensionLoader;
+import org.xu.remoting.dto.RpcRequest;
+import org.xu.remoting.dto.RpcResponse;
+import org.xu.serialize.Serializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各种序列化方式序列化、反序列化 RpcRequest 和 RpcResponse 的耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    @Param({"KRYO", "PROTOSTUFF", "HESSIAN"})
+    public String serializationType;
+
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    private Serializer serializer;
+    private RpcRequest rpcRequest;
+    private RpcResponse<Object> rpcResponse;
+    private ByteBuf buffer; // 序列化的输出缓冲区，每次复用
+    private ByteBuf requestBytes; // 序列化好的请求
+    private ByteBuf responseBytes; // 序列化好的响应
+
+    @Setup
+    public void setup() {
+        serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(SerializationTypeEnum.valueOf(serializationType).getName());
+        rpcRequest = BenchmarkData.rpcRequest(payloadSize);
+        rpcResponse = BenchmarkData.rpcResponse(payloadSize);
+        buffer = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize * 2 + 1024);
+        requestBytes = PooledByteBufAllocator.DEFAULT.directBuffer();
+        serializer.serialize(rpcRequest, requestBytes);
+        responseBytes = PooledByteBufAllocator.DEFAULT.directBuffer();
+        serializer.serialize(rpcResponse, responseBytes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.release();
+        requestBytes.release();
+        responseBytes.release();
+    }
+
+    @Benchmark
+    public ByteBuf serializeRequest() {
+        buffer.clear();
+        serializer.serialize(rpcRequest, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public RpcRequest deserializeRequest() {
+        requestBytes.readerIndex(0);
+        return serializer.deserialize(requestBytes, requestBytes.readableBytes(), RpcRequest.class);
+    }
+
+    @Benchmark
+    public ByteBuf serializeResponse() {
+        buffer.clear();
+        serializer.serialize(rpcResponse, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public RpcResponse<?> deserializeResponse() {
+        responseBytes.readerIndex(0);
+        return serializer.deserialize(responseBytes, responseBytes.readableBytes(), RpcResponse.class);
+    }
+}
@@ -11,7 +11,10 @@ import lombok.Getter;
 public enum LoadBalanceEnum {
 
     RANDOM("random"),
-    CONSISTENT_HASH("consistentHash");
+    CONSISTENT_HASH("consistentHash"),
+    LEAST_ACTIVE("leastActive"),
+    P2C_EWMA("p2cEwma"),
+    WEIGHTED_ROUND_ROBIN("weightedRoundRobin");
 
     private final String name;
 }
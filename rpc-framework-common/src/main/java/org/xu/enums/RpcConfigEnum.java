@@ -11,7 +11,33 @@ import lombok.Getter;
 public enum RpcConfigEnum {
 
     RPC_CONFIG_PATH("rpc.properties"),
-    ZK_ADDRESS("rpc.zookeeper.address");
+    ZK_ADDRESS("rpc.zookeeper.address"),
+    COMPRESS_TYPE("rpc.compress.type"), // 压缩方式，none 表示不压缩
+    SERIALIZATION("rpc.serialization"), // 客户端默认的序列化方式，见 SerializationTypeEnum，服务配置中指定时以服务配置为准
+    COMPRESS_THRESHOLD("rpc.compress.threshold"), // 消息体达到多少字节才压缩
+    REQUEST_TIMEOUT("rpc.request.timeout"), // 请求超时时间，单位毫秒
+    SERVER_EXECUTION_MODE("rpc.server.execution.mode"), // 服务端执行服务方法的方式，见 ServerExecutionModeEnum
+    SERVICE_MAX_CONCURRENCY("rpc.server.service.max.concurrency"), // 每个服务同时执行的最大请求数，不大于 0 表示不限制；超过的请求在虚拟线程中执行时等待，在平台线程中执行时直接拒绝；在虚拟线程中执行并且和 rpc.server.service.max.in.flight 同时配置时，两者之差是每个服务最多等待的请求数
+    CLIENT_MAX_CONNECTIONS("rpc.client.max.connections"), // 客户端到每个服务端地址最多建立的连接数
+    CLIENT_CONNECTION_IDLE_TIMEOUT("rpc.client.connection.idle.timeout"), // 多余的连接空闲多久后关闭，单位毫秒
+    FLUSH_CONSOLIDATION("rpc.flush.consolidation"), // 是否合并 flush，true/false
+    FLUSH_MAX_MESSAGES("rpc.flush.max.messages"), // 合并 flush 时，最多攒多少条消息就 flush
+    FLUSH_MAX_DELAY("rpc.flush.max.delay"), // 合并 flush 时，消息最多等多久就 flush，单位微秒，0 表示当前这批任务执行完就 flush
+    LOAD_BALANCE("rpc.loadbalance"), // 客户端的负载均衡策略，见 LoadBalanceEnum
+    HASH_ARGUMENTS("rpc.loadbalance.hash.arguments"), // 一致性哈希使用哪些参数计算哈希值，参数下标，逗号分隔，不配置时使用全部参数
+    REGISTRY("rpc.registry"), // 注册中心的实现方式，见 ServiceRegistryEnum，默认 zk
+    REGISTRY_DIRECT_ADDRESSES("rpc.registry.direct.addresses"), // 直连时服务端的地址，ip:port，逗号分隔
+    REGISTRY_FILE("rpc.registry.file"), // 本地文件注册中心使用的文件，默认在临时目录中
+    TRANSPORT_TYPE("rpc.transport.type"), // netty 使用的 IO 实现，见 TransportTypeEnum，默认 auto
+    SERVER_ACCEPTORS("rpc.server.acceptors"), // 服务端用 SO_REUSEPORT 绑定同一端口的次数，每次绑定一个接收线程，只有 epoll 支持
+    SOCKET_SEND_BUFFER("rpc.socket.send.buffer"), // socket 发送缓冲区大小（SO_SNDBUF），单位字节，不配置时使用系统默认值
+    SOCKET_RECEIVE_BUFFER("rpc.socket.receive.buffer"), // socket 接收缓冲区大小（SO_RCVBUF），单位字节，不配置时使用系统默认值
+    WRITE_BUFFER_LOW_WATER_MARK("rpc.write.buffer.low.water.mark"), // 待写出的数据降到多少字节以下时连接重新可写
+    WRITE_BUFFER_HIGH_WATER_MARK("rpc.write.buffer.high.water.mark"), // 待写出的数据超过多少字节时连接不可写
+    SERVER_MAX_IN_FLIGHT("rpc.server.max.in.flight"), // 服务端同时处理的最大请求数，超过的请求直接拒绝，不大于 0 表示不限制
+    SERVICE_MAX_IN_FLIGHT("rpc.server.service.max.in.flight"), // 每个服务同时处理（等待和执行）的最大请求数，超过的请求直接拒绝，不大于 0 表示不限制；不大于 rpc.server.service.max.concurrency 时请求不会等待
+    SERVER_LIMIT_ADAPTIVE("rpc.server.limit.adaptive"), // 是否按排队时间自动调整上限，true/false
+    SERVER_LIMIT_TARGET_QUEUE_DELAY("rpc.server.limit.target.queue.delay"); // 自动调整上限时，请求排队时间的目标值，单位毫秒
 
     private final String propertyValue;
 }
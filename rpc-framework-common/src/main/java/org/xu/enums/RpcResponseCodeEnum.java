@@ -12,7 +12,8 @@ import lombok.ToString;
 @ToString
 public enum RpcResponseCodeEnum {
     SUCCESS(200, "The remote call is successful"),
-    FAIL(500, "The remote call is fail");
+    FAIL(500, "The remote call is fail"),
+    OVERLOADED(503, "The server is overloaded, the request is rejected"); // 服务端过载，请求没有执行，可以换一个服务端重试
     private final int code;
     private final String message;
 }
@@ -25,4 +25,13 @@ public enum SerializationTypeEnum {
         }
         return null;
     }
+
+    public static byte getCode(String name) {
+        for (SerializationTypeEnum c : SerializationTypeEnum.values()) {
+            if (c.getName().equals(name)) {
+                return c.code;
+            }
+        }
+        throw new IllegalArgumentException("Unknown serialization type: " + name);
+    }
 }
@@ -0,0 +1,25 @@
+package org.xu.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 服务端执行服务方法的方式
+ */
+@AllArgsConstructor
+@Getter
+public enum ServerExecutionModeEnum {
+    EVENT_EXECUTOR("event-executor"), // 固定大小的 DefaultEventExecutorGroup，cpus * 2 个线程
+    VIRTUAL_THREAD("virtual-thread"); // 每个请求一个虚拟线程，阻塞的服务方法不会占住其他服务的线程
+
+    private final String name;
+
+    public static ServerExecutionModeEnum getMode(String name) {
+        for (ServerExecutionModeEnum c : ServerExecutionModeEnum.values()) {
+            if (c.getName().equalsIgnoreCase(name)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("Unknown server execution mode: " + name);
+    }
+}
@@ -9,6 +9,8 @@ import lombok.Getter;
 @AllArgsConstructor
 @Getter
 public enum ServiceDiscoveryEnum {
-    ZK("zk");
+    ZK("zk"),
+    DIRECT("direct"), // 直连，地址来自配置
+    FILE("file"); // 本地文件
     private final String name;
 }
@@ -10,7 +10,9 @@ import lombok.Getter;
 @Getter
 public enum ServiceRegistryEnum {
 
-    ZK("zk");
+    ZK("zk"),
+    DIRECT("direct"), // 直连，不注册
+    FILE("file"); // 本地文件
 
     private final String name;
 }
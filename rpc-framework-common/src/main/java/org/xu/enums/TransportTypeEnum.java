@@ -0,0 +1,26 @@
+package org.xu.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * netty 使用的 IO 实现
+ */
+@AllArgsConstructor
+@Getter
+public enum TransportTypeEnum {
+    AUTO("auto"), // 可以使用 epoll 时使用 epoll，否则使用 nio
+    EPOLL("epoll"), // linux 的 epoll，支持 SO_REUSEPORT，不可用时退回 nio
+    NIO("nio"); // jdk 的 nio，所有平台都可用
+
+    private final String name;
+
+    public static TransportTypeEnum getType(String name) {
+        for (TransportTypeEnum c : TransportTypeEnum.values()) {
+            if (c.getName().equalsIgnoreCase(name)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("Unknown transport type: " + name);
+    }
+}
@@ -0,0 +1,13 @@
+package org.xu.exception;
+
+/**
+ * 压缩异常
+ */
+public class CompressException extends RuntimeException {
+    public CompressException(String message) {
+        super(message);
+    }
+    public CompressException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
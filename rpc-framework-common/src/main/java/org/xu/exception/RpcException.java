@@ -9,6 +9,9 @@ public class RpcException extends RuntimeException {
     public RpcException(String message, Throwable cause) {
         super(message, cause);
     }
+    public RpcException(RpcErrorMessageEnum rpcErrorMessageEnum, String detail, Throwable cause) {
+        super(rpcErrorMessageEnum.getMessage() + ":" + detail, cause);
+    }
     public RpcException(RpcErrorMessageEnum rpcErrorMessageEnum, String detail) {
         super(rpcErrorMessageEnum.getMessage() + ":" + detail);
     }
@@ -0,0 +1,53 @@
+package org.xu.utils;
+
+import org.xu.enums.RpcConfigEnum;
+
+import java.util.Properties;
+
+/**
+ * 读取 rpc.properties 中配置项的工具类。
+ * 配置文件只在第一次使用时读取一次并缓存；同名的 JVM 系统属性（-Dkey=value）优先于配置文件
+ */
+public final class RpcConfigUtil {
+
+    private static volatile Properties properties; // 缓存的配置文件内容
+
+    private RpcConfigUtil() { // 工具类，私有构造方法
+    }
+
+    public static String getProperty(RpcConfigEnum rpcConfigEnum, String defaultValue) {
+        String key = rpcConfigEnum.getPropertyValue();
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = getProperties().getProperty(key);
+        }
+        return StringUtil.isBlank(value) ? defaultValue : value.trim();
+    }
+
+    public static int getIntProperty(RpcConfigEnum rpcConfigEnum, int defaultValue) {
+        String value = getProperty(rpcConfigEnum, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public static boolean getBooleanProperty(RpcConfigEnum rpcConfigEnum, boolean defaultValue) {
+        String value = getProperty(rpcConfigEnum, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private static Properties getProperties() {
+        Properties result = properties;
+        if (result == null) {
+            synchronized (RpcConfigUtil.class) { // 双重锁校验，保证只读取一次配置文件
+                result = properties;
+                if (result == null) {
+                    result = PropertiesFileUtil.readPropertiesFile(RpcConfigEnum.RPC_CONFIG_PATH.getPropertyValue());
+                    if (result == null) { // 没有配置文件时使用默认值
+                        result = new Properties();
+                    }
+                    properties = result;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -42,6 +42,26 @@ public class ThreadPoolFactoryUtil {
         return createCustomThreadPoolIfAbsent(customThreadPoolConfig, threadNamePrefix, false);
     }
 
+    /**
+     * 创建每个任务一个虚拟线程的执行器，同一个 threadNamePrefix 只创建一个
+     * @param threadNamePrefix 虚拟线程名字前缀
+     * @return ExecutorService
+     */
+    public static ExecutorService createVirtualThreadExecutorIfAbsent(String threadNamePrefix) {
+        ExecutorService executor = THREAD_POOLS.computeIfAbsent(threadNamePrefix, k -> createVirtualThreadExecutor(threadNamePrefix));
+        // 如果 executor 被 关闭 就重新创建一个
+        if (executor.isShutdown() || executor.isTerminated()) {
+            THREAD_POOLS.remove(threadNamePrefix);
+            executor = createVirtualThreadExecutor(threadNamePrefix);
+            THREAD_POOLS.put(threadNamePrefix, executor);
+        }
+        return executor;
+    }
+
+    private static ExecutorService createVirtualThreadExecutor(String threadNamePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadNamePrefix + "-", 0).factory());
+    }
+
     private static ExecutorService createThreadPool(CustomThreadPoolConfig customThreadPoolConfig, String threadNamePrefix, Boolean daemon) {
         ThreadFactory threadFactory = createThreadFactory(threadNamePrefix, daemon);
         return new ThreadPoolExecutor(customThreadPoolConfig.getCorePoolSize(), customThreadPoolConfig.getMaximumPoolSize(),
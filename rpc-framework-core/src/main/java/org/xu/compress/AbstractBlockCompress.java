@@ -0,0 +1,57 @@
+package org.xu.compress;
+
+import io.airlift.compress.Compressor;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.MalformedInputException;
+import io.netty.buffer.ByteBuf;
+import org.xu.exception.CompressException;
+import org.xu.remoting.constants.RpcConstants;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 块压缩算法（lz4、zstd）的抽象类，提取公共代码。
+ * 压缩结果的格式为：4B 原始长度 + 压缩后的数据块，解压时可以一次分配好所需的空间。
+ * 压缩和解压都直接在 ByteBuf 的内存视图上进行，不拷贝出 byte 数组
+ */
+public abstract class AbstractBlockCompress implements Compress {
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        int length = in.readableBytes();
+        Compressor compressor = getCompressor();
+        int maxCompressedLength = compressor.maxCompressedLength(length);
+        out.ensureWritable(4 + maxCompressedLength);
+        out.writeInt(length);
+        ByteBuffer source = in.nioBuffer(in.readerIndex(), length);
+        ByteBuffer target = out.nioBuffer(out.writerIndex(), maxCompressedLength);
+        compressor.compress(source, target);
+        in.skipBytes(length);
+        out.writerIndex(out.writerIndex() + target.position());
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out) {
+        int length = in.readInt();
+        if (length < 0 || length > RpcConstants.MAX_FRAME_LENGTH) { // 防止恶意数据让我们分配过大的内存
+            throw new CompressException("Illegal decompressed length: " + length);
+        }
+        out.ensureWritable(length);
+        ByteBuffer source = in.nioBuffer(in.readerIndex(), in.readableBytes());
+        ByteBuffer target = out.nioBuffer(out.writerIndex(), length);
+        try {
+            getDecompressor().decompress(source, target);
+        } catch (MalformedInputException e) {
+            throw new CompressException("Decompress failed", e);
+        }
+        in.skipBytes(in.readableBytes());
+        out.writerIndex(out.writerIndex() + target.position());
+    }
+
+    /**
+     * 压缩器不是线程安全的，子类需要保证每个线程拿到的是独立的实例
+     */
+    protected abstract Compressor getCompressor();
+
+    protected abstract Decompressor getDecompressor();
+}
@@ -0,0 +1,20 @@
+package org.xu.compress;
+
+import io.netty.buffer.ByteBuf;
+import org.xu.extension.SPI;
+
+/**
+ * 压缩接口
+ */
+@SPI
+public interface Compress {
+    /**
+     * 压缩 in 中全部可读的数据，结果写入 out
+     */
+    void compress(ByteBuf in, ByteBuf out);
+
+    /**
+     * 解压 in 中全部可读的数据，结果写入 out
+     */
+    void decompress(ByteBuf in, ByteBuf out);
+}
@@ -0,0 +1,44 @@
+package org.xu.compress.gzip;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.xu.compress.Compress;
+import org.xu.exception.CompressException;
+import org.xu.remoting.constants.RpcConstants;
+
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GZIP压缩
+ */
+public class GzipCompress implements Compress {
+
+    private static final int BUFFER_SIZE = 1024 * 4;
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        try (GZIPOutputStream gzip = new GZIPOutputStream(new ByteBufOutputStream(out), BUFFER_SIZE)) {
+            in.readBytes(gzip, in.readableBytes());
+            gzip.finish();
+        } catch (IOException e) {
+            throw new CompressException("gzip compress error", e);
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out) {
+        try (GZIPInputStream unGzip = new GZIPInputStream(new ByteBufInputStream(in), BUFFER_SIZE)) {
+            int start = out.writerIndex();
+            while (out.writeBytes(unGzip, BUFFER_SIZE) > 0) {
+                if (out.writerIndex() - start > RpcConstants.MAX_FRAME_LENGTH) { // 防止恶意数据让我们分配过大的内存
+                    throw new CompressException("gzip decompressed data is larger than max frame length");
+                }
+            }
+        } catch (IOException e) {
+            throw new CompressException("gzip decompress error", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.xu.compress.lz4;
+
+import io.airlift.compress.Compressor;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import org.xu.compress.AbstractBlockCompress;
+
+/**
+ * LZ4压缩（纯Java实现），压缩率一般，但是速度很快
+ */
+public class Lz4Compress extends AbstractBlockCompress {
+
+    private final ThreadLocal<Lz4Compressor> compressorThreadLocal = ThreadLocal.withInitial(Lz4Compressor::new);
+    private final ThreadLocal<Lz4Decompressor> decompressorThreadLocal = ThreadLocal.withInitial(Lz4Decompressor::new);
+
+    @Override
+    protected Compressor getCompressor() {
+        return compressorThreadLocal.get();
+    }
+
+    @Override
+    protected Decompressor getDecompressor() {
+        return decompressorThreadLocal.get();
+    }
+}
@@ -0,0 +1,26 @@
+package org.xu.compress.zstd;
+
+import io.airlift.compress.Compressor;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import org.xu.compress.AbstractBlockCompress;
+
+/**
+ * Zstd压缩（纯Java实现），压缩率接近 gzip，速度快很多
+ */
+public class ZstdCompress extends AbstractBlockCompress {
+
+    private final ThreadLocal<ZstdCompressor> compressorThreadLocal = ThreadLocal.withInitial(ZstdCompressor::new);
+    private final ThreadLocal<ZstdDecompressor> decompressorThreadLocal = ThreadLocal.withInitial(ZstdDecompressor::new);
+
+    @Override
+    protected Compressor getCompressor() {
+        return compressorThreadLocal.get();
+    }
+
+    @Override
+    protected Decompressor getDecompressor() {
+        return decompressorThreadLocal.get();
+    }
+}
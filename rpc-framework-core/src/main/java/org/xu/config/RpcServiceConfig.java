@@ -1,6 +1,10 @@
 package org.xu.config;
 
 import lombok.*;
+import org.xu.registry.ServiceEndpoint;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * rpc服务的配置信息
@@ -15,10 +19,35 @@ public class RpcServiceConfig {
     private String version = ""; // 服务版本
     private String group = ""; // 当接口有多个实现类时，按组进行区分
     private Object service = ""; // 目标服务对象
+    @Builder.Default
+    private int weight = ServiceEndpoint.DEFAULT_WEIGHT; // 权重，发布到注册中心，不大于 0 时使用默认权重
+    private long warmup; // 预热时间，单位毫秒，发布后的这段时间内权重逐渐增加到 weight，0 表示不预热
+    private long timeout; // 客户端调用这个服务的超时时间，单位毫秒，不大于 0 时使用 rpc.request.timeout
+    @Builder.Default
+    private Map<String, Long> methodTimeouts = new HashMap<>(); // 方法名 -> 超时时间，单位毫秒，优先于 timeout
+    private String serialization; // 客户端调用这个服务使用的序列化方式，见 SerializationTypeEnum，为空时使用 rpc.serialization，默认 kryo
+
+    /**
+     * 设置一个方法的超时时间，同名的重载方法使用同一个超时时间
+     */
+    public void setMethodTimeout(String methodName, long timeoutMillis) {
+        methodTimeouts.put(methodName, timeoutMillis);
+    }
 
+    /**
+     * 方法的超时时间，没有配置时返回 0
+     */
+    public long getTimeout(String methodName) {
+        Long methodTimeout = methodTimeouts.get(methodName);
+        return methodTimeout != null && methodTimeout > 0 ? methodTimeout : Math.max(timeout, 0);
+    }
 
     public String getServiceName() {
-        return this.service.getClass().getInterfaces()[0].getCanonicalName();
+        return this.getServiceInterface().getCanonicalName();
+    }
+
+    public Class<?> getServiceInterface() { // 服务对外提供的接口
+        return this.service.getClass().getInterfaces()[0];
     }
 
     public String getRpcServiceName() {
@@ -1,5 +1,6 @@
 package org.xu.loadbalance;
 
+import org.xu.registry.ServiceEndpoint;
 import org.xu.remoting.dto.RpcRequest;
 import org.xu.utils.CollectionUtil;
 
@@ -10,15 +11,15 @@ import java.util.List;
  */
 public abstract class AbstractLoadBalance implements LoadBalance {
     @Override
-    public String selectServiceAddress(List<String> serviceUrlList, RpcRequest rpcRequest) {
-        if (CollectionUtil.isEmpty(serviceUrlList)) {
+    public ServiceEndpoint selectServiceAddress(List<ServiceEndpoint> serviceEndpoints, RpcRequest rpcRequest) {
+        if (CollectionUtil.isEmpty(serviceEndpoints)) {
             return null;
         }
-        if (serviceUrlList.size() == 1) {
-            return serviceUrlList.getFirst();
+        if (serviceEndpoints.size() == 1) {
+            return serviceEndpoints.getFirst();
         }
-        return doSelect(serviceUrlList, rpcRequest);
+        return doSelect(serviceEndpoints, rpcRequest);
     }
 
-    protected abstract String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest);
+    protected abstract ServiceEndpoint doSelect(List<ServiceEndpoint> serviceEndpoints, RpcRequest rpcRequest);
 }
@@ -0,0 +1,122 @@
+package org.xu.loadbalance;
+
+import org.xu.registry.ServiceEndpoint;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务地址的调用统计，供负载均衡使用
+ * <p>
+ * 每个服务地址（ip:port，和注册中心中的节点名一致）一份，同一地址上的多个连接共用。客户端发出请求时活跃数加一，
+ * 收到响应、超时或者连接断开时减一，并记录响应时间。响应时间按时间衰减的指数加权平均计算，
+ * 比平均值慢的响应立即生效，慢下来的服务端马上就会少分到请求，恢复后再逐渐回到正常。
+ * <p>
+ * 读取时也按距离上一个样本的时间衰减（趋向 0），一次慢响应之后分不到请求、没有新样本的服务端，
+ * 空闲一段时间后负载会降下来，重新得到请求
+ */
+public class EndpointStats {
+    private static final Map<String, EndpointStats> ENDPOINT_STATS = new ConcurrentHashMap<>();
+    private static final double DECAY_NANOS = 10_000_000_000D; // 衰减时间常数，10秒前的样本权重约为 1/e
+    private static final double UNMEASURED_PENALTY = Long.MAX_VALUE >> 16; // 还没有响应时间、又有未返回请求的地址的负载，大于任何有响应时间的地址
+
+    private final AtomicInteger active = new AtomicInteger(); // 未返回的请求数
+    private double ewmaLatencyNanos; // 响应时间的加权平均，单位纳秒
+    private long lastUpdateNanos;
+
+    /**
+     * 获取服务地址对应的统计，没有时创建
+     *
+     * @param address ip:port
+     */
+    public static EndpointStats of(String address) {
+        return ENDPOINT_STATS.computeIfAbsent(address, k -> new EndpointStats());
+    }
+
+    public static EndpointStats of(InetSocketAddress address) {
+        return of(ServiceEndpoint.toAddress(address));
+    }
+
+    /**
+     * 服务地址下线后移除它的统计
+     */
+    public static void remove(String address) {
+        ENDPOINT_STATS.remove(address);
+    }
+
+    /**
+     * 发出一个请求
+     */
+    public void begin() {
+        active.incrementAndGet();
+    }
+
+    /**
+     * 请求结束，记录响应时间
+     */
+    public void end(long latencyNanos) {
+        end(latencyNanos, System.nanoTime());
+    }
+
+    void end(long latencyNanos, long nowNanos) {
+        active.decrementAndGet();
+        synchronized (this) {
+            double decayed = decayedLatencyNanos(nowNanos);
+            if (lastUpdateNanos == 0 || latencyNanos > decayed) {
+                ewmaLatencyNanos = latencyNanos;
+            } else {
+                double weight = Math.exp(-(nowNanos - lastUpdateNanos) / DECAY_NANOS);
+                ewmaLatencyNanos = decayed + latencyNanos * (1 - weight);
+            }
+            lastUpdateNanos = nowNanos;
+        }
+    }
+
+    /**
+     * 请求没有得到响应（比如连接断开），只减少活跃数
+     */
+    public void abort() {
+        active.decrementAndGet();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * 响应时间的加权平均，按距离上一个样本的时间衰减，单位纳秒。还没有响应时间时为 0
+     */
+    public synchronized double getEwmaLatencyNanos() {
+        return decayedLatencyNanos(System.nanoTime());
+    }
+
+    /**
+     * 负载，响应时间乘以排队的请求数，越小越好。
+     * 还没有响应时间的地址：没有未返回的请求时负载为 0，先得到一个请求；有未返回的请求时负载大于所有有响应时间的地址，
+     * 它们之间按未返回的请求数比较，新上线或者卡住的服务端在第一个请求返回（或超时）之前不会再分到请求
+     */
+    public double getLoad() {
+        return getLoad(System.nanoTime());
+    }
+
+    double getLoad(long nowNanos) {
+        int activeCount = getActive();
+        double latencyNanos;
+        synchronized (this) {
+            if (lastUpdateNanos == 0) {
+                return activeCount == 0 ? 0 : UNMEASURED_PENALTY + activeCount;
+            }
+            latencyNanos = decayedLatencyNanos(nowNanos);
+        }
+        return latencyNanos * (activeCount + 1);
+    }
+
+    private double decayedLatencyNanos(long nowNanos) {
+        if (lastUpdateNanos == 0) {
+            return 0;
+        }
+        return ewmaLatencyNanos * Math.exp(-Math.max(nowNanos - lastUpdateNanos, 0) / DECAY_NANOS);
+    }
+}
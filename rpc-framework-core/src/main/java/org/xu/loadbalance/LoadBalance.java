@@ -1,6 +1,7 @@
 package org.xu.loadbalance;
 
 import org.xu.extension.SPI;
+import org.xu.registry.ServiceEndpoint;
 import org.xu.remoting.dto.RpcRequest;
 
 import java.util.List;
@@ -13,5 +14,5 @@ public interface LoadBalance {
     /**
      * 从服务地址列表中选择一个
      */
-    String selectServiceAddress(List<String> serviceUrlList, RpcRequest rpcRequest);
+    ServiceEndpoint selectServiceAddress(List<ServiceEndpoint> serviceEndpoints, RpcRequest rpcRequest);
 }
@@ -1,97 +1,182 @@
 package org.xu.loadbalance.loadbalancer;
 
+import org.xu.enums.RpcConfigEnum;
 import org.xu.loadbalance.AbstractLoadBalance;
+import org.xu.registry.ServiceEndpoint;
 import org.xu.remoting.dto.RpcRequest;
+import org.xu.utils.RpcConfigUtil;
+import org.xu.utils.StringUtil;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 仿Dubbo实现一致性哈希负载均衡：
  * https://cn.dubbo.apache.org/zh-cn/blog/2019/05/01/dubbo-%e4%b8%80%e8%87%b4%e6%80%a7hash%e8%b4%9f%e8%bd%bd%e5%9d%87%e8%a1%a1%e5%ae%9e%e7%8e%b0%e5%89%96%e6%9e%90/
+ * <p>
+ * 和 Dubbo 不同的是，哈希环是排好序的 long 数组，用二分查找定位；请求的哈希值直接由参数计算（murmur3），
+ * 不拼接字符串，也不用 MD5，选择地址的过程不分配对象。
+ * 参与哈希的参数由 rpc.loadbalance.hash.arguments 配置（参数下标，逗号分隔），不配置时使用全部参数。
+ * 字符串、数字、布尔、字符、枚举按值计算，在不同的客户端上结果相同；其他类型的参数使用 hashCode()，需要按值实现 hashCode
  */
 public class ConsistentHashLoadBalance extends AbstractLoadBalance {
 
+    private static final int REPLICA_NUMBER = 160; // 每个地址的虚拟节点数
+    private static final long C1 = 0x87c37b91114253d5L; // murmur3 的常数
+    private static final long C2 = 0x4cf5ad432745937fL;
+
     private final ConcurrentHashMap<String, ConsistentHashSelector> selectors = new ConcurrentHashMap<>();
+    private final int[] hashArguments; // 参与哈希的参数下标，为 null 时使用全部参数
+
+    public ConsistentHashLoadBalance() {
+        hashArguments = parseHashArguments(RpcConfigUtil.getProperty(RpcConfigEnum.HASH_ARGUMENTS, null));
+    }
 
     @Override
-    protected String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest) {
-        int identityHashCode = System.identityHashCode(serviceAddresses); // 可以用来识别地址列表是否发生过变更
+    protected ServiceEndpoint doSelect(List<ServiceEndpoint> serviceEndpoints, RpcRequest rpcRequest) {
         String rpcServiceName = rpcRequest.getRpcServiceName(); // 完整的 rpcServiceName 来取出选择器
         ConsistentHashSelector selector = selectors.get(rpcServiceName); // 取出对应的选择器
-        // 如果选择器不存在，或者地址列表被更新过,就创建一个新的
-        if (selector == null || selector.identityHashCode != identityHashCode) {
-            selectors.put(rpcServiceName, new ConsistentHashSelector(serviceAddresses, identityHashCode));
-            selector = selectors.get(rpcServiceName);
+        // 如果选择器不存在，或者地址列表被更新过（注册中心的监听器会换成新的列表），就创建一个新的
+        if (selector == null || selector.serviceEndpoints != serviceEndpoints) {
+            selector = new ConsistentHashSelector(serviceEndpoints, REPLICA_NUMBER);
+            selectors.put(rpcServiceName, selector);
         }
-        // 根据rpc请求的服务名和参数列表，计算hash值，得到对应的服务地址
-        return selector.select(rpcServiceName + Arrays.stream(rpcRequest.getParameters()));
+        // 根据rpc请求的参数计算hash值，得到对应的服务地址
+        return selector.select(hashArguments(rpcRequest.getParameters()));
     }
 
-    private static final class ConsistentHashSelector { // 选择器，用来做映射关系的
-        private final TreeMap<Long, String> virtualInvokers; // 存储 hash值 与 地址映射关系的TreeMap
-        private final int replicaNumber = 160; // 副本数目（虚拟节点的数目），这里默认为160个
-        private final int identityHashCode; // hash码，用来识别地址列表是否发生过变更
-
-        ConsistentHashSelector(List<String> invokers, int identityHashCode) {
-            this.virtualInvokers = new TreeMap<>();
-            this.identityHashCode = identityHashCode;
-
-            // 遍历所有的服务地址
-            for (String invoker : invokers) {
-                // 创建该地址所有虚拟节点的 hash 值，并存到 TreeMap中
-                for (int i = 0; i < replicaNumber / 4; i++) { // 先获取 160 / 4 个虚拟节点的 md5 码
-                    byte[] digest = md5(invoker + i);
-                    for (int h = 0; h < 4; h++) { // 对每个md5码再进行4次位数级别的散列，（加强散列效果？）
-                        long m = hash(digest, h);
-                        virtualInvokers.put(m, invoker);
-                    }
+    private long hashArguments(Object[] parameters) {
+        long h = 0;
+        if (parameters == null) {
+            return h;
+        }
+        if (hashArguments == null) {
+            for (Object parameter : parameters) {
+                h = hashArgument(parameter, h);
+            }
+        } else {
+            for (int index : hashArguments) {
+                if (index < parameters.length) {
+                    h = hashArgument(parameters[index], h);
                 }
             }
         }
+        return h;
+    }
 
-        private static byte[] md5(String key) {
-            MessageDigest md;
-            try {
-                md = MessageDigest.getInstance("MD5");
-                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
-                md.update(bytes);
-            } catch (NoSuchAlgorithmException e) {
-                throw new IllegalStateException(e.getMessage(), e);
-            }
-            return md.digest();
+    private static long hashArgument(Object argument, long seed) {
+        if (argument instanceof CharSequence) {
+            return murmur3((CharSequence) argument, seed);
         }
-
-        private static long hash(byte[] digest, int idx) {
-            return ((long) (digest[3 + idx * 4] & 255) << 24
-                    | (long) (digest[2 + idx * 4] & 255) << 16
-                    | (long) (digest[1 + idx * 4] & 255) << 8
-                    | (long) (digest[idx * 4] & 255))
-                    & 4294967295L;
+        if (argument instanceof Enum) {
+            return murmur3(((Enum<?>) argument).name(), seed);
+        }
+        long value;
+        if (argument == null) {
+            value = 0;
+        } else if (argument instanceof Double || argument instanceof Float) {
+            value = Double.doubleToLongBits(((Number) argument).doubleValue());
+        } else if (argument instanceof Number) {
+            value = ((Number) argument).longValue();
+        } else if (argument instanceof Boolean) {
+            value = (Boolean) argument ? 1 : 0;
+        } else if (argument instanceof Character) {
+            value = (Character) argument;
+        } else {
+            value = argument.hashCode();
         }
+        return murmur3(value, seed);
+    }
 
-        public String select(String rpcServiceKey) {
-            byte[] bytes = md5(rpcServiceKey);
-            return selectFactory(hash(bytes, 0)); // 根据hash值取出对应的服务地址
+    private static int[] parseHashArguments(String value) {
+        if (StringUtil.isBlank(value)) {
+            return null;
         }
+        return Arrays.stream(value.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
 
-        public String selectFactory(long hashCode) { // 根据hash值取出对应的服务地址
-            // 根据hashCode，获取第一个哈希值大于等于 hashCode 的元素
-            Map.Entry<Long, String> entry = virtualInvokers.ceilingEntry(hashCode);
-            if (entry == null) {
-                // 如果没有获取到，说明没有比 hashCode 更大的，就直接用第一个元素
-                entry = virtualInvokers.firstEntry();
-            }
-            return entry.getValue();
+    /**
+     * murmur3（x64 的第一路）计算字符序列的哈希值，每 4 个字符组成一个 64 位的块
+     */
+    static long murmur3(CharSequence s, long seed) {
+        long h = seed;
+        int length = s.length();
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long k = s.charAt(i)
+                    | (long) s.charAt(i + 1) << 16
+                    | (long) s.charAt(i + 2) << 32
+                    | (long) s.charAt(i + 3) << 48;
+            h ^= mixK(k);
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+        long k = 0;
+        for (int shift = 0; i < length; i++, shift += 16) {
+            k |= (long) s.charAt(i) << shift;
         }
+        h ^= mixK(k);
+        h ^= length;
+        return fmix64(h);
+    }
 
+    static long murmur3(long value, long seed) {
+        long h = seed ^ mixK(value);
+        h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        return fmix64(h ^ Long.BYTES);
+    }
+
+    private static long mixK(long k) {
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        return k * C2;
+    }
+
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class ConsistentHashSelector { // 选择器，用来做映射关系的
+        private final long[] ring; // 虚拟节点的哈希值，升序排列
+        private final ServiceEndpoint[] ringEndpoints; // 和 ring 一一对应的服务地址
+        private final List<ServiceEndpoint> serviceEndpoints; // 创建选择器时的地址列表，用来识别地址列表是否发生过变更
 
+        ConsistentHashSelector(List<ServiceEndpoint> serviceEndpoints, int replicaNumber) {
+            this.serviceEndpoints = serviceEndpoints;
+            int size = serviceEndpoints.size() * replicaNumber;
+            long[][] nodes = new long[size][]; // {哈希值, 地址下标}
+            int n = 0;
+            for (int address = 0; address < serviceEndpoints.size(); address++) {
+                // 以虚拟节点的序号为种子，计算该地址所有虚拟节点的哈希值
+                for (int i = 0; i < replicaNumber; i++) {
+                    nodes[n++] = new long[]{murmur3(serviceEndpoints.get(address).getAddress(), i), address};
+                }
+            }
+            Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+            ring = new long[size];
+            ringEndpoints = new ServiceEndpoint[size];
+            for (int i = 0; i < size; i++) {
+                ring[i] = nodes[i][0];
+                ringEndpoints[i] = serviceEndpoints.get((int) nodes[i][1]);
+            }
+        }
 
+        ServiceEndpoint select(long hashCode) { // 根据hash值取出对应的服务地址
+            // 找到第一个哈希值大于等于 hashCode 的虚拟节点
+            int index = Arrays.binarySearch(ring, hashCode);
+            if (index < 0) {
+                index = -index - 1;
+                if (index == ring.length) {
+                    // 没有比 hashCode 更大的，就直接用第一个节点
+                    index = 0;
+                }
+            }
+            return ringEndpoints[index];
+        }
     }
 }
@@ -0,0 +1,35 @@
+package org.xu.loadbalance.loadbalancer;
+
+import org.xu.loadbalance.AbstractLoadBalance;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.loadbalance.EndpointStats;
+import org.xu.remoting.dto.RpcRequest;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 最少活跃数负载均衡：选择未返回请求最少的地址，活跃数相同的地址中随机选一个。
+ * 处理得慢的服务端积压的请求多，自然少分到请求
+ */
+public class LeastActiveLoadBalance extends AbstractLoadBalance {
+    @Override
+    protected ServiceEndpoint doSelect(List<ServiceEndpoint> serviceEndpoints, RpcRequest rpcRequest) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ServiceEndpoint selected = null;
+        int leastActive = Integer.MAX_VALUE;
+        int leastCount = 0; // 活跃数最少的地址个数
+        for (ServiceEndpoint serviceEndpoint : serviceEndpoints) {
+            int active = EndpointStats.of(serviceEndpoint.getAddress()).getActive();
+            if (active < leastActive) {
+                leastActive = active;
+                leastCount = 1;
+                selected = serviceEndpoint;
+            } else if (active == leastActive && random.nextInt(++leastCount) == 0) {
+                // 蓄水池抽样，活跃数相同的地址被选中的概率相同
+                selected = serviceEndpoint;
+            }
+        }
+        return selected;
+    }
+}
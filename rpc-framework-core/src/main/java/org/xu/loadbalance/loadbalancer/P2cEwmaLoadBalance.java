@@ -0,0 +1,30 @@
+package org.xu.loadbalance.loadbalancer;
+
+import org.xu.loadbalance.AbstractLoadBalance;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.loadbalance.EndpointStats;
+import org.xu.remoting.dto.RpcRequest;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 两次随机选择（power of two choices）负载均衡：随机取两个不同的地址，选择负载小的一个。
+ * 负载为响应时间的指数加权平均乘以活跃数，见 {@link EndpointStats#getLoad()}，空闲地址的响应时间随时间衰减，不会一直选不到。
+ * 不需要遍历所有地址，又能避开变慢或者积压的服务端
+ */
+public class P2cEwmaLoadBalance extends AbstractLoadBalance {
+    @Override
+    protected ServiceEndpoint doSelect(List<ServiceEndpoint> serviceEndpoints, RpcRequest rpcRequest) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = serviceEndpoints.size();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++; // 保证两次选到不同的地址
+        }
+        ServiceEndpoint a = serviceEndpoints.get(first);
+        ServiceEndpoint b = serviceEndpoints.get(second);
+        return EndpointStats.of(a.getAddress()).getLoad() <= EndpointStats.of(b.getAddress()).getLoad() ? a : b;
+    }
+}
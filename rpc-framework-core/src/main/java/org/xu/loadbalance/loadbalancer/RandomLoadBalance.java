@@ -1,6 +1,7 @@
 package org.xu.loadbalance.loadbalancer;
 
 import org.xu.loadbalance.AbstractLoadBalance;
+import org.xu.registry.ServiceEndpoint;
 import org.xu.remoting.dto.RpcRequest;
 
 import java.util.List;
@@ -11,8 +12,8 @@ import java.util.Random;
  */
 public class RandomLoadBalance extends AbstractLoadBalance {
     @Override
-    protected String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest) {
+    protected ServiceEndpoint doSelect(List<ServiceEndpoint> serviceEndpoints, RpcRequest rpcRequest) {
         Random random = new Random();
-        return serviceAddresses.get(random.nextInt(serviceAddresses.size()));
+        return serviceEndpoints.get(random.nextInt(serviceEndpoints.size()));
     }
 }
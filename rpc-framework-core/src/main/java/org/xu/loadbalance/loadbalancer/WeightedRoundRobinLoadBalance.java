@@ -0,0 +1,108 @@
+package org.xu.loadbalance.loadbalancer;
+
+import org.xu.loadbalance.AbstractLoadBalance;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.remoting.dto.RpcRequest;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 平滑加权轮询负载均衡（nginx 的 smooth weighted round-robin），权重来自服务端发布到注册中心的元数据
+ * <p>
+ * 平滑加权轮询每次选择都要修改所有地址的当前权重，多线程下需要加锁。这里改为提前按同样的算法排好一轮的选择顺序，
+ * 选择时只对序号做一次原子自增，不加锁。地址列表变化时重新排；有地址在预热时，预热后的权重随时间变化，每秒重新排一次
+ */
+public class WeightedRoundRobinLoadBalance extends AbstractLoadBalance {
+
+    private static final int MAX_SCHEDULE_LENGTH = 1 << 14; // 一轮最多的选择次数，权重之和更大时按比例缩小
+    private static final long WARMUP_REFRESH_MILLIS = 1000; // 有地址预热时，重新排序的间隔
+
+    private final ConcurrentHashMap<String, Schedule> schedules = new ConcurrentHashMap<>();
+
+    @Override
+    protected ServiceEndpoint doSelect(List<ServiceEndpoint> serviceEndpoints, RpcRequest rpcRequest) {
+        String rpcServiceName = rpcRequest.getRpcServiceName();
+        Schedule schedule = schedules.get(rpcServiceName);
+        if (schedule == null || schedule.serviceEndpoints != serviceEndpoints
+                || (schedule.refreshMillis > 0 && System.currentTimeMillis() >= schedule.refreshMillis)) {
+            // 多个线程同时重新排序也没有关系，结果相同，后放入的覆盖先放入的
+            schedule = new Schedule(serviceEndpoints, System.currentTimeMillis());
+            schedules.put(rpcServiceName, schedule);
+        }
+        return schedule.next();
+    }
+
+    private static final class Schedule {
+        private final List<ServiceEndpoint> serviceEndpoints; // 创建时的地址列表，用来识别地址列表是否发生过变更
+        private final ServiceEndpoint[] slots; // 一轮的选择顺序
+        private final long refreshMillis; // 到这个时间需要重新排序，0 表示不需要
+        private final AtomicInteger sequence = new AtomicInteger();
+
+        Schedule(List<ServiceEndpoint> serviceEndpoints, long now) {
+            this.serviceEndpoints = serviceEndpoints;
+            int size = serviceEndpoints.size();
+            int[] weights = new int[size];
+            boolean warmingUp = false;
+            int gcd = 0;
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                ServiceEndpoint serviceEndpoint = serviceEndpoints.get(i);
+                weights[i] = serviceEndpoint.getWarmedWeight(now);
+                warmingUp |= serviceEndpoint.isWarmingUp(now);
+                gcd = gcd(gcd, weights[i]);
+                total += weights[i];
+            }
+            // 权重同除以最大公约数，权重相同时一轮就是每个地址各一次
+            total /= gcd;
+            for (int i = 0; i < size; i++) {
+                weights[i] /= gcd;
+            }
+            if (total > MAX_SCHEDULE_LENGTH) {
+                long scaledTotal = 0;
+                for (int i = 0; i < size; i++) {
+                    weights[i] = (int) Math.max(1, weights[i] * MAX_SCHEDULE_LENGTH / total);
+                    scaledTotal += weights[i];
+                }
+                total = scaledTotal;
+            }
+            this.slots = smoothWeightedRoundRobin(serviceEndpoints, weights, (int) total);
+            this.refreshMillis = warmingUp ? now + WARMUP_REFRESH_MILLIS : 0;
+        }
+
+        ServiceEndpoint next() {
+            int index = (sequence.getAndIncrement() & Integer.MAX_VALUE) % slots.length;
+            return slots[index];
+        }
+
+        /**
+         * 平滑加权轮询：每次所有地址的当前权重加上自己的权重，选当前权重最大的，再把它的当前权重减去总权重
+         */
+        private static ServiceEndpoint[] smoothWeightedRoundRobin(List<ServiceEndpoint> serviceEndpoints, int[] weights, int total) {
+            ServiceEndpoint[] slots = new ServiceEndpoint[total];
+            long[] current = new long[weights.length];
+            for (int n = 0; n < total; n++) {
+                int selected = 0;
+                for (int i = 0; i < weights.length; i++) {
+                    current[i] += weights[i];
+                    if (current[i] > current[selected]) {
+                        selected = i;
+                    }
+                }
+                current[selected] -= total;
+                slots[n] = serviceEndpoints.get(selected);
+            }
+            return slots;
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+}
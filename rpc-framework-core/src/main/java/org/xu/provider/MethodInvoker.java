@@ -0,0 +1,63 @@
+package org.xu.provider;
+
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * 服务的一个方法，持有绑定好服务对象的 MethodHandle
+ * <p>
+ * MethodHandle 在服务注册时创建好，参数数组展开、返回值装箱都已经适配完，调用时只需要一次 invokeExact，
+ * 不再有 getMethod 查找和 Method.invoke 的参数检查
+ */
+@Getter
+public class MethodInvoker {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private final int methodId; // 方法id，在服务端内唯一
+    private final String rpcServiceName; // 所属服务
+    private final String signature; // 方法签名，形如 sayHello(org.xu.Hello)
+    private final Method method;
+    private final MethodHandle methodHandle; // (Object[]) -> Object
+
+    MethodInvoker(int methodId, String rpcServiceName, Method method, Object service) throws IllegalAccessException {
+        this.methodId = methodId;
+        this.rpcServiceName = rpcServiceName;
+        this.signature = signatureOf(method);
+        this.method = method;
+        if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            method.trySetAccessible(); // 接口不是 public 时需要放开访问检查
+        }
+        this.methodHandle = MethodHandles.lookup().unreflect(method)
+                .bindTo(service)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(INVOKER_TYPE);
+    }
+
+    /**
+     * 调用方法，目标方法抛出的异常原样抛出
+     */
+    public Object invoke(Object[] args) throws Throwable {
+        return (Object) methodHandle.invokeExact(args == null ? EMPTY_ARGS : args);
+    }
+
+    /**
+     * 参数类型是否和方法一致
+     */
+    public boolean matches(Class<?>[] paramTypes) {
+        return Arrays.equals(method.getParameterTypes(), paramTypes == null ? new Class<?>[0] : paramTypes);
+    }
+
+    public static String signatureOf(Method method) {
+        return method.getName() + Arrays.stream(method.getParameterTypes())
+                .map(Class::getTypeName)
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+}
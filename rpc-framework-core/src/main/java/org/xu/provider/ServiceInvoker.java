@@ -0,0 +1,96 @@
+package org.xu.provider;
+
+import lombok.Getter;
+import org.xu.enums.RpcErrorMessageEnum;
+import org.xu.exception.RpcException;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * 一个服务的方法索引，在服务注册时建立
+ * <p>
+ * 服务接口的每个方法按签名排序后分配一个紧凑的方法id，可以按方法id 直接取，也可以按方法名和参数类型取。
+ * 一个服务端上的多个服务共用一段连续的方法id，每个服务从 firstMethodId 开始编号
+ */
+public class ServiceInvoker {
+    @Getter
+    private final String rpcServiceName;
+    @Getter
+    private final Object service;
+    @Getter
+    private final int firstMethodId; // 第一个方法的id
+    private final MethodInvoker[] methodInvokers; // 下标 + firstMethodId 就是方法id
+    private final Map<String, MethodInvoker[]> methodInvokersByName; // 方法名 -> 同名的方法（重载）
+
+    public ServiceInvoker(String rpcServiceName, Class<?> serviceInterface, Object service) {
+        this(rpcServiceName, serviceInterface, service, 0);
+    }
+
+    public ServiceInvoker(String rpcServiceName, Class<?> serviceInterface, Object service, int firstMethodId) {
+        this.rpcServiceName = rpcServiceName;
+        this.firstMethodId = firstMethodId;
+        this.service = service;
+        Method[] methods = Arrays.stream(serviceInterface.getMethods())
+                .filter(m -> !Modifier.isStatic(m.getModifiers()))
+                .sorted(Comparator.comparing(MethodInvoker::signatureOf))
+                .toArray(Method[]::new);
+        this.methodInvokers = new MethodInvoker[methods.length];
+        Map<String, List<MethodInvoker>> byName = new HashMap<>();
+        for (int i = 0; i < methods.length; i++) {
+            try {
+                methodInvokers[i] = new MethodInvoker(firstMethodId + i, rpcServiceName, methods[i], service);
+            } catch (IllegalAccessException e) {
+                throw new RpcException(e.getMessage(), e);
+            }
+            byName.computeIfAbsent(methods[i].getName(), k -> new ArrayList<>()).add(methodInvokers[i]);
+        }
+        this.methodInvokersByName = new HashMap<>();
+        byName.forEach((name, list) -> methodInvokersByName.put(name, list.toArray(new MethodInvoker[0])));
+    }
+
+    /**
+     * 按方法名和参数类型获取方法
+     */
+    public MethodInvoker getMethodInvoker(String methodName, Class<?>[] paramTypes) {
+        MethodInvoker[] candidates = methodInvokersByName.get(methodName);
+        if (candidates != null) {
+            for (MethodInvoker candidate : candidates) {
+                if (candidate.matches(paramTypes)) {
+                    return candidate;
+                }
+            }
+        }
+        throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, "no such method: " + rpcServiceName + "#" + methodName);
+    }
+
+    /**
+     * 按方法id 获取方法
+     */
+    public MethodInvoker getMethodInvoker(int methodId) {
+        int index = methodId - firstMethodId;
+        if (index < 0 || index >= methodInvokers.length) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, "no such method id: " + rpcServiceName + "#" + methodId);
+        }
+        return methodInvokers[index];
+    }
+
+    /**
+     * 方法签名 -> 方法id
+     */
+    public Map<String, Integer> getMethodIds() {
+        Map<String, Integer> methodIds = new HashMap<>();
+        for (MethodInvoker methodInvoker : methodInvokers) {
+            methodIds.put(methodInvoker.getSignature(), methodInvoker.getMethodId());
+        }
+        return methodIds;
+    }
+
+    /**
+     * 所有方法，按方法id 排列
+     */
+    public List<MethodInvoker> getMethodInvokers() {
+        return Collections.unmodifiableList(Arrays.asList(methodInvokers));
+    }
+}
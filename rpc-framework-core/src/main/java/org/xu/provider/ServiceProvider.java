@@ -2,11 +2,17 @@ package org.xu.provider;
 
 import org.xu.config.RpcServiceConfig;
 
+import java.util.Map;
+
 /**
  * 存储和提供服务对象
  */
 public interface ServiceProvider {
     void addService(RpcServiceConfig rpcServiceConfig); // 存储服务对象
     Object getService(String rpcServiceName); // 根据rpcServiceName获取服务对象
+    ServiceInvoker getServiceInvoker(String rpcServiceName); // 根据rpcServiceName获取服务的方法索引
+    MethodInvoker getMethodInvoker(int methodId); // 根据方法id获取方法
+    Map<String, Map<String, Integer>> getMethodIds(); // 所有服务的方法id，rpcServiceName -> 方法签名 -> 方法id
     void publishService(RpcServiceConfig rpcServiceConfig); // 发布服务（服务注册 + 存储服务对象）
+    void unpublishServices(); // 从注册中心注销所有已发布的服务，关闭服务端时调用
 }
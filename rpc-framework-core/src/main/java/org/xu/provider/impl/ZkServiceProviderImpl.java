@@ -2,17 +2,25 @@ package org.xu.provider.impl;
 
 import lombok.extern.slf4j.Slf4j;
 import org.xu.config.RpcServiceConfig;
+import org.xu.enums.RpcConfigEnum;
 import org.xu.enums.RpcErrorMessageEnum;
 import org.xu.enums.ServiceRegistryEnum;
 import org.xu.exception.RpcException;
 import org.xu.extension.ExtensionLoader;
+import org.xu.provider.MethodInvoker;
+import org.xu.provider.ServiceInvoker;
 import org.xu.provider.ServiceProvider;
+import org.xu.registry.ServiceEndpoint;
 import org.xu.registry.ServiceRegistry;
 import org.xu.remoting.transport.socket.SocketRpcServer;
+import org.xu.utils.RpcConfigUtil;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -25,13 +33,18 @@ public class ZkServiceProviderImpl implements ServiceProvider {
      * value: 服务实现对象
      */
     private final Map<String, Object> serviceMap; // 存储服务对象
+    private final Map<String, ServiceInvoker> serviceInvokerMap; // 存储服务的方法索引，注册时建立
+    private volatile MethodInvoker[] methodTable = new MethodInvoker[0]; // 所有服务的方法，下标就是方法id，只增不减
     private final Set<String> registeredService; // 已经注册并存储的服务名
     private final ServiceRegistry serviceRegistry;
+    private final Map<String, ServiceEndpoint> publishedEndpoints = new ConcurrentHashMap<>(); // 已经发布到注册中心的服务和地址
 
     public ZkServiceProviderImpl() {
         serviceMap = new ConcurrentHashMap<>();
+        serviceInvokerMap = new ConcurrentHashMap<>();
         registeredService = ConcurrentHashMap.newKeySet();
-        serviceRegistry = ExtensionLoader.getExtensionLoader(ServiceRegistry.class).getExtension(ServiceRegistryEnum.ZK.getName());
+        serviceRegistry = ExtensionLoader.getExtensionLoader(ServiceRegistry.class).getExtension(
+                RpcConfigUtil.getProperty(RpcConfigEnum.REGISTRY, ServiceRegistryEnum.ZK.getName()));
     }
 
     @Override
@@ -42,6 +55,18 @@ public class ZkServiceProviderImpl implements ServiceProvider {
         }
         registeredService.add(rpcServiceName);
         serviceMap.put(rpcServiceName, rpcServiceConfig.getService());
+        synchronized (this) {
+            // 新服务的方法id 接在已有的方法后面，已经分配的方法id 不变
+            MethodInvoker[] table = methodTable;
+            ServiceInvoker serviceInvoker = new ServiceInvoker(rpcServiceName, rpcServiceConfig.getServiceInterface(), rpcServiceConfig.getService(), table.length);
+            List<MethodInvoker> methodInvokers = serviceInvoker.getMethodInvokers();
+            MethodInvoker[] newTable = Arrays.copyOf(table, table.length + methodInvokers.size());
+            for (MethodInvoker methodInvoker : methodInvokers) {
+                newTable[methodInvoker.getMethodId()] = methodInvoker;
+            }
+            serviceInvokerMap.put(rpcServiceName, serviceInvoker);
+            methodTable = newTable;
+        }
         log.info("Add service: {} and interfaces:{}", rpcServiceName, rpcServiceConfig.getService().getClass().getInterfaces());
     }
 
@@ -54,14 +79,53 @@ public class ZkServiceProviderImpl implements ServiceProvider {
         return service;
     }
 
+    @Override
+    public ServiceInvoker getServiceInvoker(String rpcServiceName) {
+        ServiceInvoker serviceInvoker = serviceInvokerMap.get(rpcServiceName);
+        if (null == serviceInvoker) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_CAN_NOT_BE_FOUND);
+        }
+        return serviceInvoker;
+    }
+
+    @Override
+    public MethodInvoker getMethodInvoker(int methodId) {
+        MethodInvoker[] table = methodTable;
+        if (methodId < 0 || methodId >= table.length) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_CAN_NOT_BE_FOUND, "methodId:" + methodId);
+        }
+        return table[methodId];
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getMethodIds() {
+        Map<String, Map<String, Integer>> methodIds = new HashMap<>();
+        serviceInvokerMap.forEach((rpcServiceName, serviceInvoker) -> methodIds.put(rpcServiceName, serviceInvoker.getMethodIds()));
+        return methodIds;
+    }
+
     @Override
     public void publishService(RpcServiceConfig rpcServiceConfig) {
         try {
             String host = InetAddress.getLocalHost().getHostAddress();
             this.addService(rpcServiceConfig);
-            serviceRegistry.registerService(rpcServiceConfig.getRpcServiceName(), new InetSocketAddress(host, SocketRpcServer.PORT));
+            String address = ServiceEndpoint.toAddress(new InetSocketAddress(host, SocketRpcServer.PORT));
+            // 发布时间作为预热的起点
+            ServiceEndpoint serviceEndpoint = new ServiceEndpoint(address, rpcServiceConfig.getWeight(),
+                    rpcServiceConfig.getWarmup(), System.currentTimeMillis());
+            serviceRegistry.registerService(rpcServiceConfig.getRpcServiceName(), serviceEndpoint);
+            publishedEndpoints.put(rpcServiceConfig.getRpcServiceName(), serviceEndpoint);
         } catch (UnknownHostException e) {
             log.error("occur exception when getHostAddress", e);
         }
     }
+
+    @Override
+    public void unpublishServices() {
+        publishedEndpoints.forEach((rpcServiceName, serviceEndpoint) -> {
+            serviceRegistry.unregisterService(rpcServiceName, serviceEndpoint);
+            log.info("unpublish service [{}] at [{}]", rpcServiceName, serviceEndpoint.getAddress());
+        });
+        publishedEndpoints.clear();
+    }
 }
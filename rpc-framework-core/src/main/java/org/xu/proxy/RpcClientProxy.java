@@ -2,20 +2,26 @@ package org.xu.proxy;
 
 import lombok.extern.slf4j.Slf4j;
 import org.xu.config.RpcServiceConfig;
+import org.xu.enums.RpcConfigEnum;
 import org.xu.enums.RpcErrorMessageEnum;
 import org.xu.enums.RpcResponseCodeEnum;
+import org.xu.enums.SerializationTypeEnum;
 import org.xu.exception.RpcException;
+import org.xu.provider.MethodInvoker;
 import org.xu.remoting.dto.RpcRequest;
 import org.xu.remoting.dto.RpcResponse;
 import org.xu.remoting.transport.RpcRequestTransport;
-import org.xu.remoting.transport.netty.client.NettyRpcClient;
-import org.xu.remoting.transport.socket.SocketRpcClient;
+import org.xu.remoting.transport.netty.client.UnprocessedRequests;
+import org.xu.utils.RpcConfigUtil;
+import org.xu.utils.StringUtil;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * 客户端的动态代理类
@@ -27,15 +33,30 @@ public class RpcClientProxy implements InvocationHandler {
 
     private final RpcRequestTransport rpcRequestTransport;
     private final RpcServiceConfig rpcServiceConfig;
+    private final byte codec; // 请求使用的序列化方式
+    private final Map<Method, String> methodSignatures = new ConcurrentHashMap<>(); // 方法签名缓存，按方法id 调用时用来查方法表
 
     public RpcClientProxy(RpcRequestTransport rpcRequestTransport, RpcServiceConfig rpcServiceConfig) {
         this.rpcRequestTransport = rpcRequestTransport;
         this.rpcServiceConfig = rpcServiceConfig;
+        this.codec = codecOf(rpcServiceConfig);
     }
 
     public RpcClientProxy(RpcRequestTransport rpcRequestTransport) {
         this.rpcRequestTransport = rpcRequestTransport;
         this.rpcServiceConfig = new RpcServiceConfig();
+        this.codec = codecOf(rpcServiceConfig);
+    }
+
+    /**
+     * 序列化方式：服务配置中指定的，没有指定时使用 rpc.serialization，都没有配置时使用 kryo
+     */
+    private static byte codecOf(RpcServiceConfig rpcServiceConfig) {
+        String serialization = rpcServiceConfig.getSerialization();
+        if (StringUtil.isBlank(serialization)) {
+            serialization = RpcConfigUtil.getProperty(RpcConfigEnum.SERIALIZATION, SerializationTypeEnum.KRYO.getName());
+        }
+        return SerializationTypeEnum.getCode(serialization);
     }
 
 
@@ -49,30 +70,70 @@ public class RpcClientProxy implements InvocationHandler {
 
     /**
      * 代理方法
+     * <p>
+     * 接口方法的返回值是 {@link CompletableFuture} 时不阻塞调用线程，直接返回异步结果
      */
-    @SuppressWarnings("unchecked")
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
         log.info("invoked method: [{}]", method.getName());
+        CompletableFuture<Object> resultFuture = invokeAsync(method, args);
+        if (method.getReturnType() == CompletableFuture.class) {
+            return resultFuture;
+        }
+        try {
+            return resultFuture.get();
+        } catch (ExecutionException e) {
+            // 抛出真正的异常，而不是包装后的 ExecutionException
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException || cause instanceof Error ? cause : e;
+        }
+    }
+
+    /**
+     * 异步调用远程方法，返回的 future 以远程方法的返回值完成，响应检查失败时以 {@link RpcException} 异常完成
+     * <p>
+     * future 在客户端的 IO 线程（netty 传输）或者连接的读取线程（socket 传输）中完成，在它上面注册的回调不要阻塞
+     *
+     * @param method 接口方法，远程方法本身返回 CompletableFuture 时，future 以其中的值完成
+     * @param args   方法参数
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Object> invokeAsync(Method method, Object[] args) {
         RpcRequest rpcRequest = RpcRequest.builder().methodName(method.getName())
                 .parameters(args)
                 .interfaceName(method.getDeclaringClass().getName())
                 .paramTypes(method.getParameterTypes())
-                .requestId(UUID.randomUUID().toString())
+                .methodSignature(methodSignatures.computeIfAbsent(method, MethodInvoker::signatureOf))
                 .group(rpcServiceConfig.getGroup())
                 .version(rpcServiceConfig.getVersion())
+                .timeout(timeoutOf(method))
+                .codec(codec)
                 .build();
-        RpcResponse<Object> rpcResponse = null;
-        if (rpcRequestTransport instanceof NettyRpcClient) {
-            CompletableFuture<RpcResponse<Object>> completableFuture =
-                    (CompletableFuture<RpcResponse<Object>>) rpcRequestTransport.sendRpcRequest(rpcRequest);
-            rpcResponse = completableFuture.get();
+        try {
+            Object result = rpcRequestTransport.sendRpcRequest(rpcRequest);
+            if (result instanceof CompletableFuture) {
+                // 传输层返回 future 时（netty、socket 传输）不阻塞，收到响应后再检查
+                CompletableFuture<RpcResponse<Object>> completableFuture = (CompletableFuture<RpcResponse<Object>>) result;
+                return completableFuture.thenApply(rpcResponse -> {
+                    this.check(rpcResponse, rpcRequest);
+                    return rpcResponse.getData();
+                });
+            }
+            RpcResponse<Object> rpcResponse = (RpcResponse<Object>) result;
+            this.check(rpcResponse, rpcRequest);
+            return CompletableFuture.completedFuture(rpcResponse.getData());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
-        if (rpcRequestTransport instanceof SocketRpcClient) {
-            rpcResponse = (RpcResponse<Object>) rpcRequestTransport.sendRpcRequest(rpcRequest);
-        }
-        this.check(rpcResponse, rpcRequest);
-        return rpcResponse.getData();
+    }
+
+    /**
+     * 方法的超时时间：服务配置中的方法超时时间、服务超时时间，都没有配置时使用 rpc.request.timeout。
+     * 超时时间随请求发给服务端，服务端不再执行客户端已经放弃的请求
+     */
+    private long timeoutOf(Method method) {
+        long timeout = rpcServiceConfig.getTimeout(method.getName());
+        return timeout > 0 ? timeout : UnprocessedRequests.getDefaultTimeoutMillis();
     }
 
     private void check(RpcResponse<Object> rpcResponse, RpcRequest rpcRequest) {
@@ -80,10 +141,9 @@ public class RpcClientProxy implements InvocationHandler {
             throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
         }
 
-        if (!rpcRequest.getRequestId().equals(rpcResponse.getRequestId())) {
-            throw new RpcException(RpcErrorMessageEnum.REQUEST_NOT_MATCH_RESPONSE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
+        if (rpcResponse.getCode() != null && rpcResponse.getCode() == RpcResponseCodeEnum.OVERLOADED.getCode()) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_OVERLOADED, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
         }
-
         if (rpcResponse.getCode() == null || !rpcResponse.getCode().equals(RpcResponseCodeEnum.SUCCESS.getCode())) {
             throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
         }
@@ -0,0 +1,47 @@
+package org.xu.registry;
+
+import lombok.extern.slf4j.Slf4j;
+import org.xu.enums.LoadBalanceEnum;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.RpcErrorMessageEnum;
+import org.xu.exception.RpcException;
+import org.xu.extension.ExtensionLoader;
+import org.xu.loadbalance.LoadBalance;
+import org.xu.remoting.dto.RpcRequest;
+import org.xu.utils.CollectionUtil;
+import org.xu.utils.RpcConfigUtil;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * 服务发现的抽象类，提取公共代码：子类只需要提供服务的地址快照，由这里做负载均衡
+ */
+@Slf4j
+public abstract class AbstractServiceDiscovery implements ServiceDiscovery {
+
+    private final LoadBalance loadBalance;
+
+    protected AbstractServiceDiscovery() {
+        String loadBalanceName = RpcConfigUtil.getProperty(RpcConfigEnum.LOAD_BALANCE, LoadBalanceEnum.CONSISTENT_HASH.getName());
+        loadBalance = ExtensionLoader.getExtensionLoader(LoadBalance.class).getExtension(loadBalanceName);
+    }
+
+    @Override
+    public InetSocketAddress lookupService(RpcRequest rpcRequest) {
+        String rpcServiceName = rpcRequest.getRpcServiceName();
+        List<ServiceEndpoint> serviceEndpoints = getServiceEndpoints(rpcServiceName);
+        if (CollectionUtil.isEmpty(serviceEndpoints)) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_CAN_NOT_BE_FOUND, rpcServiceName);
+        }
+        // 负载均衡
+        ServiceEndpoint targetServiceEndpoint = loadBalance.selectServiceAddress(serviceEndpoints, rpcRequest);
+        log.debug("Successfully found the service address:[{}]", targetServiceEndpoint.getAddress());
+        return targetServiceEndpoint.getInetSocketAddress();
+    }
+
+    /**
+     * 服务当前的地址快照，地址变化时返回新的列表，不变时返回同一个列表（负载均衡器据此判断是否需要重建）
+     */
+    protected abstract List<ServiceEndpoint> getServiceEndpoints(String rpcServiceName);
+}
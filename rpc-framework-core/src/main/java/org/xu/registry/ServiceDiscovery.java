@@ -16,4 +16,16 @@ public interface ServiceDiscovery {
      * @return 远程服务地址
      */
     InetSocketAddress lookupService(RpcRequest rpcRequest);
+
+    /**
+     * 添加服务地址变化的监听器，只通知查找过的服务的地址变化
+     */
+    default void addServiceEndpointListener(ServiceEndpointListener listener) {
+    }
+
+    /**
+     * 移除服务地址变化的监听器
+     */
+    default void removeServiceEndpointListener(ServiceEndpointListener listener) {
+    }
 }
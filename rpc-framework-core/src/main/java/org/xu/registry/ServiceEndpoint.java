@@ -0,0 +1,115 @@
+package org.xu.registry;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 注册中心中的一个服务地址，以及服务端发布的元数据（权重、预热时间、启动时间）
+ * <p>
+ * 地址为 ip:port，就是注册中心中的节点名；元数据以 weight=100&warmup=60000&timestamp=... 的形式保存在节点数据中，
+ * 旧版本服务端注册的节点没有这些数据，按默认权重、不预热处理
+ */
+@Slf4j
+@Getter
+@ToString
+@EqualsAndHashCode
+public class ServiceEndpoint {
+    public static final int DEFAULT_WEIGHT = 100; // 默认权重
+
+    private final String address; // ip:port
+    private final String host;
+    private final int port;
+    private final int weight; // 权重
+    private final long warmup; // 预热时间，单位毫秒，0 表示不预热
+    private final long timestamp; // 服务端发布服务的时间
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final InetSocketAddress inetSocketAddress; // 创建时解析好，查找服务时直接使用
+
+    public ServiceEndpoint(String address, int weight, long warmup, long timestamp) {
+        this.address = address;
+        int index = address.lastIndexOf(':');
+        this.host = address.substring(0, index);
+        this.port = Integer.parseInt(address.substring(index + 1));
+        this.weight = weight > 0 ? weight : DEFAULT_WEIGHT;
+        this.warmup = Math.max(warmup, 0);
+        this.timestamp = timestamp;
+        this.inetSocketAddress = new InetSocketAddress(host, port);
+    }
+
+    /**
+     * 没有元数据的地址
+     */
+    public static ServiceEndpoint of(String address) {
+        return new ServiceEndpoint(address, DEFAULT_WEIGHT, 0, 0);
+    }
+
+    /**
+     * 根据节点名和节点数据创建，数据不是元数据格式时使用默认值
+     */
+    public static ServiceEndpoint parse(String address, byte[] data) {
+        int weight = DEFAULT_WEIGHT;
+        long warmup = 0;
+        long timestamp = 0;
+        if (data != null && data.length > 0) {
+            for (String pair : new String(data, StandardCharsets.UTF_8).split("&")) {
+                int index = pair.indexOf('=');
+                if (index <= 0) {
+                    continue;
+                }
+                String key = pair.substring(0, index);
+                String value = pair.substring(index + 1);
+                try {
+                    switch (key) {
+                        case "weight" -> weight = Integer.parseInt(value);
+                        case "warmup" -> warmup = Long.parseLong(value);
+                        case "timestamp" -> timestamp = Long.parseLong(value);
+                        default -> {
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    log.warn("invalid metadata [{}] of service address [{}]", pair, address);
+                }
+            }
+        }
+        return new ServiceEndpoint(address, weight, warmup, timestamp);
+    }
+
+    /**
+     * 转换成注册中心中使用的 ip:port 形式
+     */
+    public static String toAddress(InetSocketAddress address) {
+        String host = address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+        return host + ":" + address.getPort();
+    }
+
+    /**
+     * 保存到节点数据中的元数据
+     */
+    public byte[] toData() {
+        return ("weight=" + weight + "&warmup=" + warmup + "&timestamp=" + timestamp).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 考虑预热后的权重：发布后的预热时间内，权重从 1 按运行时间线性增加到配置的权重
+     */
+    public int getWarmedWeight(long now) {
+        if (!isWarmingUp(now)) {
+            return weight;
+        }
+        long uptime = now - timestamp;
+        return (int) Math.max(1, weight * uptime / warmup);
+    }
+
+    /**
+     * 是否还在预热
+     */
+    public boolean isWarmingUp(long now) {
+        return warmup > 0 && timestamp > 0 && now - timestamp < warmup;
+    }
+}
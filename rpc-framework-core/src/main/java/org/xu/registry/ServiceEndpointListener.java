@@ -0,0 +1,18 @@
+package org.xu.registry;
+
+import java.util.List;
+
+/**
+ * 服务地址变化的监听器，注册中心推送地址变化时调用
+ */
+public interface ServiceEndpointListener {
+    /**
+     * 服务新增了地址
+     */
+    void endpointsAdded(List<ServiceEndpoint> added);
+
+    /**
+     * 地址已经不再提供任何（客户端查找过的）服务，比如服务端下线
+     */
+    void endpointsRemoved(List<ServiceEndpoint> removed);
+}
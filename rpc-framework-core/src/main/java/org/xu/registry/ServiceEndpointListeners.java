@@ -0,0 +1,66 @@
+package org.xu.registry;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 一组服务地址变化的监听器，由各个服务发现实现共用：比较变化前后的地址，通知新增的地址和已经不再使用的地址
+ */
+@Slf4j
+public class ServiceEndpointListeners {
+    private final List<ServiceEndpointListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void add(ServiceEndpointListener listener) {
+        listeners.add(listener);
+    }
+
+    public void remove(ServiceEndpointListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 地址列表发生了变化
+     *
+     * @param previous   变化前的地址
+     * @param current    变化后的地址
+     * @param inUse      变化后仍在使用的所有地址（包括其他服务的），这些地址即使从 previous 中消失也不通知
+     */
+    public void fireChanged(List<ServiceEndpoint> previous, List<ServiceEndpoint> current, Set<String> inUse) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        Set<String> previousAddresses = addressesOf(previous);
+        List<ServiceEndpoint> added = current.stream().filter(e -> !previousAddresses.contains(e.getAddress())).toList();
+        List<ServiceEndpoint> removed = previous.stream().filter(e -> !inUse.contains(e.getAddress())).toList();
+        for (ServiceEndpointListener listener : listeners) {
+            try {
+                if (!added.isEmpty()) {
+                    listener.endpointsAdded(added);
+                }
+                if (!removed.isEmpty()) {
+                    listener.endpointsRemoved(removed);
+                }
+            } catch (RuntimeException e) {
+                log.error("service endpoint listener failed", e);
+            }
+        }
+    }
+
+    public static Set<String> addressesOf(Iterable<? extends List<ServiceEndpoint>> serviceEndpointLists) {
+        Set<String> addresses = new HashSet<>();
+        for (List<ServiceEndpoint> serviceEndpoints : serviceEndpointLists) {
+            for (ServiceEndpoint serviceEndpoint : serviceEndpoints) {
+                addresses.add(serviceEndpoint.getAddress());
+            }
+        }
+        return addresses;
+    }
+
+    private static Set<String> addressesOf(List<ServiceEndpoint> serviceEndpoints) {
+        return addressesOf(List.of(serviceEndpoints));
+    }
+}
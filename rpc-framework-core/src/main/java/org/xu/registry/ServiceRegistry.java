@@ -14,5 +14,21 @@ public interface ServiceRegistry {
      * @param rpcServiceName 完整的服务名称（class name + group + version）
      * @param inetSocketAddress 远程服务地址
      */
-    void registerService(String rpcServiceName, InetSocketAddress inetSocketAddress);
+    default void registerService(String rpcServiceName, InetSocketAddress inetSocketAddress) {
+        registerService(rpcServiceName, ServiceEndpoint.of(ServiceEndpoint.toAddress(inetSocketAddress)));
+    }
+
+    /**
+     * 注册服务到服务中心，同时发布权重等元数据
+     * @param rpcServiceName 完整的服务名称（class name + group + version）
+     * @param serviceEndpoint 远程服务地址和元数据
+     */
+    void registerService(String rpcServiceName, ServiceEndpoint serviceEndpoint);
+
+    /**
+     * 从服务中心注销服务，服务端关闭时调用
+     * @param rpcServiceName 完整的服务名称（class name + group + version）
+     * @param serviceEndpoint 注册时的服务地址
+     */
+    void unregisterService(String rpcServiceName, ServiceEndpoint serviceEndpoint);
 }
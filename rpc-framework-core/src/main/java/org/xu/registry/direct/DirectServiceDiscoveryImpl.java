@@ -0,0 +1,36 @@
+package org.xu.registry.direct;
+
+import lombok.extern.slf4j.Slf4j;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.registry.AbstractServiceDiscovery;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.utils.RpcConfigUtil;
+import org.xu.utils.StringUtil;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 服务发现（直连）：服务地址直接写在配置 rpc.registry.direct.addresses 中（ip:port，逗号分隔），所有服务使用同一组地址。
+ * 不依赖注册中心，启动时不需要等待连接 zookeeper，适合测试、压测和地址固定的部署
+ */
+@Slf4j
+public class DirectServiceDiscoveryImpl extends AbstractServiceDiscovery {
+
+    private final List<ServiceEndpoint> serviceEndpoints; // 启动时解析好，不会变化
+
+    public DirectServiceDiscoveryImpl() {
+        String addresses = RpcConfigUtil.getProperty(RpcConfigEnum.REGISTRY_DIRECT_ADDRESSES, null);
+        serviceEndpoints = StringUtil.isBlank(addresses) ? List.of() : Arrays.stream(addresses.split(","))
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .map(ServiceEndpoint::of)
+                .toList();
+        log.info("direct service addresses: {}", serviceEndpoints);
+    }
+
+    @Override
+    protected List<ServiceEndpoint> getServiceEndpoints(String rpcServiceName) {
+        return serviceEndpoints;
+    }
+}
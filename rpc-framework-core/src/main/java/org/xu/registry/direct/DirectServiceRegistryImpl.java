@@ -0,0 +1,21 @@
+package org.xu.registry.direct;
+
+import lombok.extern.slf4j.Slf4j;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.registry.ServiceRegistry;
+
+/**
+ * 服务注册（直连）：客户端的地址来自配置，服务端不需要注册，只记录日志
+ */
+@Slf4j
+public class DirectServiceRegistryImpl implements ServiceRegistry {
+    @Override
+    public void registerService(String rpcServiceName, ServiceEndpoint serviceEndpoint) {
+        log.info("direct registry, service [{}] is served at [{}]", rpcServiceName, serviceEndpoint.getAddress());
+    }
+
+    @Override
+    public void unregisterService(String rpcServiceName, ServiceEndpoint serviceEndpoint) {
+        log.info("direct registry, service [{}] stops at [{}]", rpcServiceName, serviceEndpoint.getAddress());
+    }
+}
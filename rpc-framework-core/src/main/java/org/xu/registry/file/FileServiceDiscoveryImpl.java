@@ -0,0 +1,120 @@
+package org.xu.registry.file;
+
+import lombok.extern.slf4j.Slf4j;
+import org.xu.registry.AbstractServiceDiscovery;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.registry.ServiceEndpointListener;
+import org.xu.registry.ServiceEndpointListeners;
+import org.xu.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 服务发现（基于本地文件实现）：读取 {@link FileServiceRegistryImpl} 写入的注册文件
+ * <p>
+ * 文件的内容解析成不可变的快照，查找服务时只读一次快照；后台线程监听文件所在目录，文件变化时重新读取并整个替换快照，
+ * 地址没有变化的服务保留原来的列表
+ */
+@Slf4j
+public class FileServiceDiscoveryImpl extends AbstractServiceDiscovery {
+
+    private final Path path = RegistryFile.path();
+    private final ServiceEndpointListeners listeners = new ServiceEndpointListeners();
+    private volatile Map<String, List<ServiceEndpoint>> services; // 所有服务的地址快照
+
+    public FileServiceDiscoveryImpl() {
+        WatchService watchService;
+        try {
+            // 先开始监听再读取文件，读取之后的修改不会漏掉
+            Files.createDirectories(path.getParent());
+            watchService = FileSystems.getDefault().newWatchService();
+            path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        services = RegistryFile.read(path);
+        Thread watcher = ThreadPoolFactoryUtil.createThreadFactory("rpc-registry-file-watcher", true)
+                .newThread(() -> watch(watchService));
+        watcher.start();
+    }
+
+    @Override
+    protected List<ServiceEndpoint> getServiceEndpoints(String rpcServiceName) {
+        return services.get(rpcServiceName);
+    }
+
+    @Override
+    public void addServiceEndpointListener(ServiceEndpointListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeServiceEndpointListener(ServiceEndpointListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void watch(WatchService watchService) {
+        Path directory = path.getParent();
+        try (watchService) {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || path.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    reload();
+                }
+                if (!key.reset()) {
+                    log.error("registry directory [{}] is no longer accessible", directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("watch registry file [{}] fail", path, e);
+        }
+    }
+
+    private void reload() {
+        Map<String, List<ServiceEndpoint>> previous = services;
+        Map<String, List<ServiceEndpoint>> current;
+        try {
+            current = RegistryFile.read(path);
+        } catch (RuntimeException e) {
+            log.error("read registry file [{}] fail", path, e);
+            return;
+        }
+        Map<String, List<ServiceEndpoint>> next = new HashMap<>();
+        current.forEach((rpcServiceName, serviceEndpoints) -> {
+            List<ServiceEndpoint> old = previous.get(rpcServiceName);
+            // 内容没有变化时保留原来的快照，负载均衡器按快照是否变化决定是否重建
+            boolean unchanged = old != null && new HashSet<>(old).equals(new HashSet<>(serviceEndpoints));
+            next.put(rpcServiceName, unchanged ? old : serviceEndpoints);
+        });
+        services = next;
+        List<ServiceEndpoint> before = new ArrayList<>();
+        previous.values().forEach(before::addAll);
+        List<ServiceEndpoint> after = new ArrayList<>();
+        next.values().forEach(after::addAll);
+        listeners.fireChanged(before, after, ServiceEndpointListeners.addressesOf(next.values()));
+        log.info("registry file [{}] reloaded: {}", path, next);
+    }
+}
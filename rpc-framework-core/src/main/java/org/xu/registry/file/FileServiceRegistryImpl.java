@@ -0,0 +1,41 @@
+package org.xu.registry.file;
+
+import lombok.extern.slf4j.Slf4j;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.registry.ServiceRegistry;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 服务注册（基于本地文件实现）：把地址写入同一台机器上共享的注册文件，见 {@link RegistryFile}。
+ * 没有会话，进程被强制杀掉时地址不会自动删除，只有正常关闭时的注销会删除
+ */
+@Slf4j
+public class FileServiceRegistryImpl implements ServiceRegistry {
+
+    private final Path path = RegistryFile.path();
+
+    @Override
+    public void registerService(String rpcServiceName, ServiceEndpoint serviceEndpoint) {
+        RegistryFile.update(path, services -> {
+            List<ServiceEndpoint> serviceEndpoints = new ArrayList<>(services.getOrDefault(rpcServiceName, List.of()));
+            // 同一个地址重新注册时替换原来的元数据
+            serviceEndpoints.removeIf(e -> e.getAddress().equals(serviceEndpoint.getAddress()));
+            serviceEndpoints.add(serviceEndpoint);
+            services.put(rpcServiceName, serviceEndpoints);
+        });
+        log.info("register service [{}] at [{}] in [{}]", rpcServiceName, serviceEndpoint.getAddress(), path);
+    }
+
+    @Override
+    public void unregisterService(String rpcServiceName, ServiceEndpoint serviceEndpoint) {
+        RegistryFile.update(path, services -> {
+            List<ServiceEndpoint> serviceEndpoints = new ArrayList<>(services.getOrDefault(rpcServiceName, List.of()));
+            serviceEndpoints.removeIf(e -> e.getAddress().equals(serviceEndpoint.getAddress()));
+            services.put(rpcServiceName, serviceEndpoints);
+        });
+        log.info("unregister service [{}] at [{}] in [{}]", rpcServiceName, serviceEndpoint.getAddress(), path);
+    }
+}
@@ -0,0 +1,122 @@
+package org.xu.registry.file;
+
+import org.xu.enums.RpcConfigEnum;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.utils.RpcConfigUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * 本地注册文件的读写
+ * <p>
+ * 文件是 properties 格式，键为 rpcServiceName，值为逗号分隔的 ip:port#元数据。
+ * 修改时先锁住旁边的 .lock 文件，同一台机器上的多个服务端进程依次修改；新内容写到临时文件后原子替换，读的一方不会读到一半的文件
+ */
+final class RegistryFile {
+    private static final String DEFAULT_FILE_NAME = "java-rpc-registry.properties";
+
+    private RegistryFile() {
+    }
+
+    /**
+     * 注册文件的路径，由 rpc.registry.file 配置，默认在临时目录中
+     */
+    static Path path() {
+        String file = RpcConfigUtil.getProperty(RpcConfigEnum.REGISTRY_FILE, null);
+        Path path = file != null ? Paths.get(file) : Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_FILE_NAME);
+        return path.toAbsolutePath();
+    }
+
+    /**
+     * 读取所有服务的地址，文件不存在时返回空 map
+     */
+    static Map<String, List<ServiceEndpoint>> read(Path path) {
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            properties.load(inputStream);
+        } catch (NoSuchFileException e) {
+            return new HashMap<>();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<String, List<ServiceEndpoint>> services = new HashMap<>();
+        for (String rpcServiceName : properties.stringPropertyNames()) {
+            List<ServiceEndpoint> serviceEndpoints = new ArrayList<>();
+            for (String entry : properties.getProperty(rpcServiceName).split(",")) {
+                entry = entry.trim();
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                int index = entry.indexOf('#');
+                String address = index < 0 ? entry : entry.substring(0, index);
+                byte[] data = index < 0 ? null : entry.substring(index + 1).getBytes(StandardCharsets.UTF_8);
+                serviceEndpoints.add(ServiceEndpoint.parse(address, data));
+            }
+            services.put(rpcServiceName, List.copyOf(serviceEndpoints));
+        }
+        return services;
+    }
+
+    /**
+     * 加锁读取、修改并写回注册文件
+     */
+    static void update(Path path, Consumer<Map<String, List<ServiceEndpoint>>> modifier) {
+        Path lockPath = path.resolveSibling(path.getFileName() + ".lock");
+        try {
+            Files.createDirectories(path.getParent());
+            try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    Map<String, List<ServiceEndpoint>> services = read(path);
+                    modifier.accept(services);
+                    write(path, services);
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void write(Path path, Map<String, List<ServiceEndpoint>> services) throws IOException {
+        Properties properties = new Properties();
+        services.forEach((rpcServiceName, serviceEndpoints) -> {
+            if (serviceEndpoints.isEmpty()) {
+                return;
+            }
+            StringBuilder value = new StringBuilder();
+            for (ServiceEndpoint serviceEndpoint : serviceEndpoints) {
+                if (!value.isEmpty()) {
+                    value.append(',');
+                }
+                value.append(serviceEndpoint.getAddress()).append('#')
+                        .append(new String(serviceEndpoint.toData(), StandardCharsets.UTF_8));
+            }
+            properties.setProperty(rpcServiceName, value.toString());
+        });
+        Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tmp)) {
+            properties.store(outputStream, "java-rpc registry");
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -2,21 +2,27 @@ package org.xu.registry.zk;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
+import org.xu.registry.ServiceEndpoint;
 import org.xu.registry.ServiceRegistry;
 import org.xu.registry.zk.util.CuratorUtils;
 
-import java.net.InetSocketAddress;
-
 /**
  * 服务注册（基于Zookeeper实现）
  */
 @Slf4j
 public class ZkServiceRegistryImpl implements ServiceRegistry {
     @Override
-    public void registerService(String rpcServiceName, InetSocketAddress inetSocketAddress) {
-        // inetSocketAddress.toString()的到的形式为  /ip:port   所以不用加 /
-        String servicePath = CuratorUtils.ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName + inetSocketAddress.toString();
+    public void registerService(String rpcServiceName, ServiceEndpoint serviceEndpoint) {
+        // 节点名为 ip:port，权重等元数据保存在节点数据中
+        String servicePath = CuratorUtils.ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName + "/" + serviceEndpoint.getAddress();
         CuratorFramework zkClient = CuratorUtils.getZkClient();
-        CuratorUtils.createPersistentNode(zkClient, servicePath);
+        // 临时节点，服务端下线后自动删除
+        CuratorUtils.createEphemeralNode(zkClient, servicePath, serviceEndpoint.toData());
+    }
+
+    @Override
+    public void unregisterService(String rpcServiceName, ServiceEndpoint serviceEndpoint) {
+        String servicePath = CuratorUtils.ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName + "/" + serviceEndpoint.getAddress();
+        CuratorUtils.removeNode(CuratorUtils.getZkClient(), servicePath);
     }
 }
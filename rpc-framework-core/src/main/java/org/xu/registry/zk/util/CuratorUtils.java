@@ -9,17 +9,25 @@ import org.apache.curator.framework.recipes.cache.CuratorCache;
 import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 import org.xu.enums.RpcConfigEnum;
-import org.xu.utils.PropertiesFileUtil;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.registry.ServiceEndpointListener;
+import org.xu.registry.ServiceEndpointListeners;
+import org.xu.utils.RpcConfigUtil;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Curator 工具类
@@ -30,9 +38,11 @@ public final class CuratorUtils {
     private static final int BASE_SLEEP_TIME = 1000; // 初始重试时间
     private static final int MAX_RETRIES = 3; // 重试次数
     public static final String ZK_REGISTER_ROOT_PATH = "/java-rpc"; // 服务注册的 zk 根路径
-    private static final Map<String, List<String>> SERVICE_ADDRESS_MAP = new ConcurrentHashMap<>(); // 已经注册的服务名和地址
-    private static final Set<String> REGISTERED_PATH_SET = ConcurrentHashMap.newKeySet(); // 已经注册创建的路径
-    private static CuratorFramework zkClient; // zk客户端
+    // 服务名和地址的快照，快照是不可变的列表，监听器在地址变化时整个替换
+    private static final Map<String, List<ServiceEndpoint>> SERVICE_ADDRESS_MAP = new ConcurrentHashMap<>();
+    private static final Map<String, byte[]> EPHEMERAL_PATH_MAP = new ConcurrentHashMap<>(); // 注册的临时节点和数据，会话过期重连后重新创建
+    private static final ServiceEndpointListeners ENDPOINT_LISTENERS = new ServiceEndpointListeners(); // 服务地址变化的监听器
+    private static volatile CuratorFramework zkClient; // zk客户端
     private static final String DEFAULT_ZOOKEEPER_ADDRESS = "127.0.0.1:2181"; // 默认zk服务器的地址
 
     private CuratorUtils() { // 工具类，私有构造方法
@@ -44,21 +54,32 @@ public final class CuratorUtils {
      * @return CuratorFramework
      */
     public static CuratorFramework getZkClient() {
-        // 检查用户是否设置了 zk 地址
-        Properties properties = PropertiesFileUtil.readPropertiesFile(RpcConfigEnum.RPC_CONFIG_PATH.getPropertyValue());
-        String zookeeperAddress =
-                properties != null && properties.getProperty(RpcConfigEnum.ZK_ADDRESS.getPropertyValue()) != null ?
-                        properties.getProperty(RpcConfigEnum.ZK_ADDRESS.getPropertyValue()) : DEFAULT_ZOOKEEPER_ADDRESS;
         // 如果 zk 客户端已经启动，直接返回
+        CuratorFramework client = zkClient;
+        if (client != null && client.getState() == CuratorFrameworkState.STARTED) {
+            return client;
+        }
+        return createZkClient();
+    }
+
+    private static synchronized CuratorFramework createZkClient() {
         if (zkClient != null && zkClient.getState() == CuratorFrameworkState.STARTED) {
             return zkClient;
         }
+        // 检查用户是否设置了 zk 地址
+        String zookeeperAddress = RpcConfigUtil.getProperty(RpcConfigEnum.ZK_ADDRESS, DEFAULT_ZOOKEEPER_ADDRESS);
         // 重试策略，重试3次，每次会增大重试时间
         RetryPolicy retryPolicy = new ExponentialBackoffRetry(BASE_SLEEP_TIME, MAX_RETRIES);
         zkClient = CuratorFrameworkFactory.builder()
                 .connectString(zookeeperAddress) // 要连接的服务器地址，可以是列表
                 .retryPolicy(retryPolicy)
                 .build();
+        // 会话过期后临时节点会被删除，重新连上后再创建一次
+        zkClient.getConnectionStateListenable().addListener((client, newState) -> {
+            if (newState == ConnectionState.RECONNECTED) {
+                reRegisterEphemeralNodes(client);
+            }
+        });
         zkClient.start();
         try {
             // 等待30s，或者连接上zookeeper
@@ -72,56 +93,169 @@ public final class CuratorUtils {
     }
 
     /**
-     * 创建持久节点。 临时节点更合适，为什么用持久节点呢？
+     * 创建临时节点并写入数据，服务端下线（会话结束）时节点自动删除。
+     * 节点已经存在时（比如服务端重启时上一个会话还没有过期）删除后重新创建，保证节点属于当前会话
      */
-    public static void createPersistentNode(CuratorFramework zkClient, String path) {
+    public static void createEphemeralNode(CuratorFramework zkClient, String path, byte[] data) {
+        EPHEMERAL_PATH_MAP.put(path, data);
         try {
-            if (REGISTERED_PATH_SET.contains(path) || zkClient.checkExists().forPath(path) != null) {
-                log.info("The node already exists. The node is:[{}]", path);
-            } else {
-                // /java-rpc/org.xu.HelloService/127.0.0.1:8888
-                zkClient.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(path);
-                log.info("The node was created successfully. The node is:[{}]", path);
-            }
-            REGISTERED_PATH_SET.add(path);
+            createEphemeralNode0(zkClient, path, data);
+            log.info("The ephemeral node was created successfully. The node is:[{}]", path);
         } catch (Exception e) {
-            log.error("create persistent node for path [{}] fail", path);
+            log.error("create ephemeral node for path [{}] fail", path, e);
         }
     }
 
+    private static void createEphemeralNode0(CuratorFramework zkClient, String path, byte[] data) throws Exception {
+        Stat stat = zkClient.checkExists().forPath(path);
+        if (stat != null) {
+            if (stat.getEphemeralOwner() == zkClient.getZookeeperClient().getZooKeeper().getSessionId()) {
+                zkClient.setData().forPath(path, data);
+                return;
+            }
+            deleteNode(zkClient, path);
+        }
+        zkClient.create().creatingParentContainersIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path, data);
+    }
+
     /**
-     * 获取节点的子节点
+     * 删除节点，服务注销时调用
      */
-    public static List<String> getChildrenNodes(CuratorFramework zkClient, String rpcServiceName) {
-        if (SERVICE_ADDRESS_MAP.containsKey(rpcServiceName)) {
-            return SERVICE_ADDRESS_MAP.get(rpcServiceName);
-        }
-        List<String> result = null;
-        String servicePath = ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
+    public static void removeNode(CuratorFramework zkClient, String path) {
+        EPHEMERAL_PATH_MAP.remove(path);
         try {
-            result = zkClient.getChildren().forPath(servicePath);
-            SERVICE_ADDRESS_MAP.put(rpcServiceName, result);
-            // 注册监听器，监听子节点的变化修改map缓存
-            registerWatcher(zkClient, rpcServiceName);
+            deleteNode(zkClient, path);
+            log.info("The node was removed successfully. The node is:[{}]", path);
         } catch (Exception e) {
-            log.error("get children nodes for path [{}] fail", servicePath);
+            log.error("remove node for path [{}] fail", path, e);
+        }
+    }
+
+    private static void deleteNode(CuratorFramework zkClient, String path) throws Exception {
+        try {
+            zkClient.delete().forPath(path);
+        } catch (KeeperException.NoNodeException e) {
+            // 节点已经不存在
+        }
+    }
+
+    private static void reRegisterEphemeralNodes(CuratorFramework zkClient) {
+        EPHEMERAL_PATH_MAP.forEach((path, data) -> {
+            try {
+                createEphemeralNode0(zkClient, path, data);
+            } catch (Exception e) {
+                log.error("re-register ephemeral node for path [{}] fail", path, e);
+            }
+        });
+        log.info("re-registered [{}] ephemeral nodes after reconnect", EPHEMERAL_PATH_MAP.size());
+    }
+
+    /**
+     * 添加服务地址变化的监听器
+     */
+    public static void addServiceEndpointListener(ServiceEndpointListener listener) {
+        ENDPOINT_LISTENERS.add(listener);
+    }
+
+    public static void removeServiceEndpointListener(ServiceEndpointListener listener) {
+        ENDPOINT_LISTENERS.remove(listener);
+    }
+
+    /**
+     * 获取已经缓存的服务地址快照，没有缓存时返回 null。只读一次 map，不访问 zk
+     */
+    public static List<ServiceEndpoint> getCachedChildrenNodes(String rpcServiceName) {
+        return SERVICE_ADDRESS_MAP.get(rpcServiceName);
+    }
+
+    /**
+     * 获取节点的子节点，也就是服务的所有地址，以及节点数据中的元数据。
+     * 第一次获取时从 zk 读取并注册监听器，之后直接返回缓存的快照
+     */
+    public static List<ServiceEndpoint> getChildrenNodes(CuratorFramework zkClient, String rpcServiceName) {
+        List<ServiceEndpoint> result = SERVICE_ADDRESS_MAP.get(rpcServiceName);
+        if (result != null) {
+            return result;
+        }
+        synchronized (SERVICE_ADDRESS_MAP) { // 保证每个服务只注册一个监听器
+            result = SERVICE_ADDRESS_MAP.get(rpcServiceName);
+            if (result != null) {
+                return result;
+            }
+            String servicePath = ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
+            try {
+                result = readServiceEndpoints(zkClient, servicePath);
+                SERVICE_ADDRESS_MAP.put(rpcServiceName, result);
+                // 注册监听器，监听子节点的变化修改map缓存
+                registerWatcher(zkClient, rpcServiceName);
+            } catch (Exception e) {
+                log.error("get children nodes for path [{}] fail", servicePath);
+            }
         }
         return result;
     }
 
     /**
-     * 注册监听器，监听指定节点
+     * 注册监听器，监听指定节点。地址或者节点数据变化时，用缓存中的数据重新生成快照并整个替换，不再访问 zk
      */
     private static void registerWatcher(CuratorFramework zkClient, String rpcServiceName) {
         String servicePath = ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
         CuratorCache curatorCache = CuratorCache.builder(zkClient, servicePath).build();
-        CuratorCacheListener cacheListener = CuratorCacheListener.builder().forPathChildrenCache(servicePath, zkClient, (client, event) -> {
-            List<String> serviceAddress = client.getChildren().forPath(servicePath);
-            SERVICE_ADDRESS_MAP.put(rpcServiceName, serviceAddress);
-        }).build();
+        AtomicBoolean initialized = new AtomicBoolean(); // 初始化完成前缓存中的数据不完整，不生成快照
+        Runnable refresh = () -> {
+            if (initialized.get()) {
+                refreshServiceEndpoints(rpcServiceName, servicePath, curatorCache);
+            }
+        };
+        CuratorCacheListener cacheListener = CuratorCacheListener.builder()
+                .forAll((type, oldData, data) -> refresh.run())
+                .forInitialized(() -> {
+                    initialized.set(true);
+                    refresh.run();
+                })
+                .build();
         curatorCache.listenable().addListener(cacheListener);
         curatorCache.start();
         // 不能关闭
     }
 
+    private static void refreshServiceEndpoints(String rpcServiceName, String servicePath, CuratorCache curatorCache) {
+        List<ServiceEndpoint> serviceEndpoints = curatorCache.stream()
+                .filter(childData -> servicePath.equals(ZKPaths.getPathAndNode(childData.getPath()).getPath()))
+                .map(childData -> ServiceEndpoint.parse(ZKPaths.getNodeFromPath(childData.getPath()), childData.getData()))
+                .toList();
+        List<ServiceEndpoint> previous = SERVICE_ADDRESS_MAP.get(rpcServiceName);
+        // 内容没有变化时保留原来的快照，负载均衡器按快照是否变化决定是否重建
+        if (previous == null || !new HashSet<>(previous).equals(new HashSet<>(serviceEndpoints))) {
+            SERVICE_ADDRESS_MAP.put(rpcServiceName, serviceEndpoints);
+            log.info("service [{}] addresses changed: {}", rpcServiceName, serviceEndpoints);
+            // 其他服务仍在使用的地址，连接不能关闭
+            ENDPOINT_LISTENERS.fireChanged(previous == null ? List.of() : previous, serviceEndpoints,
+                    ServiceEndpointListeners.addressesOf(SERVICE_ADDRESS_MAP.values()));
+        }
+    }
+
+    /**
+     * 读取服务的所有地址和节点中的元数据
+     */
+    private static List<ServiceEndpoint> readServiceEndpoints(CuratorFramework zkClient, String servicePath) throws Exception {
+        List<String> children;
+        try {
+            children = zkClient.getChildren().forPath(servicePath);
+        } catch (KeeperException.NoNodeException e) {
+            return List.of(); // 还没有服务端注册，监听器会在注册后更新
+        }
+        List<ServiceEndpoint> serviceEndpoints = new ArrayList<>(children.size());
+        for (String child : children) {
+            byte[] data;
+            try {
+                data = zkClient.getData().forPath(servicePath + "/" + child);
+            } catch (KeeperException.NoNodeException e) {
+                continue; // 节点刚刚被删除
+            }
+            serviceEndpoints.add(ServiceEndpoint.parse(child, data));
+        }
+        return List.copyOf(serviceEndpoints);
+    }
+
 }
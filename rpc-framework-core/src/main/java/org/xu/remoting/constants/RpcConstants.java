@@ -5,10 +5,26 @@ package org.xu.remoting.constants;
  */
 public class RpcConstants {
     public static final byte[] MAGIC_NUMBER = {(byte) 'g', (byte) 'r', (byte) 'p', (byte) 'c'}; // 魔法数，用来验证RpcMessage
-    public static final byte VERSION = 1; // 版本号
+    /**
+     * 版本号，消息头或消息体的格式变化时都要递增，格式不同的对端在检查版本号时就会失败，而不是在解码消息体时才失败。
+     * 1：最初的格式；2：增加了握手和按方法id 调用；
+     * 3：压缩字段标记消息体实际使用的压缩方式（不压缩时为 none），RpcRequest/RpcResponse 去掉了字符串请求id，RpcRequest 增加了超时时间
+     */
+    public static final byte VERSION = 3;
+    /**
+     * 兼容的老版本，服务端接收这个版本的请求，并按这个版本回复：消息体为 {@link org.xu.remoting.dto.LegacyRpcRequest}、
+     * {@link org.xu.remoting.dto.LegacyRpcResponse}，按消息体中的字符串请求id 对应；压缩字段不表示消息体的压缩方式，消息体都没有压缩。
+     * 2 只在开发过程中使用过，不兼容
+     */
+    public static final byte V1_VERSION = 1;
     public static final byte TOTAL_LENGTH = 16; // 可读数据的最小长度
     public static final int HEAD_LENGTH = 16; // 消息头长度
     public static final byte REQUEST_TYPE = 1; // 消息类型为请求
     public static final byte RESPONSE_TYPE = 2; // 消息类型为响应
+    public static final byte HANDSHAKE_REQUEST_TYPE = 3; // 消息类型为握手请求，没有消息体
+    public static final byte HANDSHAKE_RESPONSE_TYPE = 4; // 消息类型为握手响应，消息体是方法表
+    public static final byte COMPACT_REQUEST_TYPE = 5; // 消息类型为按方法id 调用的请求
+    public static final byte HEARTBEAT_REQUEST_TYPE = 6; // 消息类型为心跳请求（ping），只有消息头
+    public static final byte HEARTBEAT_RESPONSE_TYPE = 7; // 消息类型为心跳响应（pong），只有消息头
     public static final int MAX_FRAME_LENGTH = 8 * 1024 * 1024; // netty自定义消息的最大长度
 }
@@ -0,0 +1,40 @@
+package org.xu.remoting.dto;
+
+import lombok.*;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * v1 协议的请求消息体，只用于解码老客户端的请求
+ * <p>
+ * 字段和 v1 的 RpcRequest 完全相同（Kryo 按字段名写出），不能增删或改名
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@ToString
+public class LegacyRpcRequest implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1905122041950251207L;
+    private String requestId; // 请求id，响应的消息体中原样带回
+    private String interfaceName; // 接口名称
+    private String methodName; // 方法名称
+    private Object[] parameters; // 参数
+    private Class<?>[] paramTypes; // 参数类型
+    private String version;
+    private String group;
+
+    /**
+     * 转换为当前版本的请求，v1 的请求没有超时时间
+     */
+    public RpcRequest toRpcRequest() {
+        return RpcRequest.builder()
+                .interfaceName(interfaceName)
+                .methodName(methodName)
+                .parameters(parameters)
+                .paramTypes(paramTypes)
+                .version(version)
+                .group(group).build();
+    }
+}
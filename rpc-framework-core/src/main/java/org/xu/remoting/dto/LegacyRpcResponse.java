@@ -0,0 +1,31 @@
+package org.xu.remoting.dto;
+
+import lombok.*;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * v1 协议的响应消息体，只用于回复老客户端的请求
+ * <p>
+ * 字段和 v1 的 RpcResponse 完全相同（Kryo 按字段名写出），不能增删或改名
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@ToString
+public class LegacyRpcResponse<T> implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 715745410605631233L;
+    private String requestId; // 请求id，老客户端按它找到对应的请求
+    private Integer code; // 响应状态码
+    private String message; // 响应消息
+    private T data; // 响应数据
+
+    /**
+     * 由当前版本的响应和 v1 请求中的请求id 创建
+     */
+    public static <T> LegacyRpcResponse<T> of(RpcResponse<T> rpcResponse, String requestId) {
+        return new LegacyRpcResponse<>(requestId, rpcResponse.getCode(), rpcResponse.getMessage(), rpcResponse.getData());
+    }
+}
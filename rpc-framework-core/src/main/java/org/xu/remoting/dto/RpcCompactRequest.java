@@ -0,0 +1,24 @@
+package org.xu.remoting.dto;
+
+import lombok.*;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * 精简的rpc请求，只有方法id 和参数
+ * <p>
+ * 方法id 来自握手时服务端下发的方法表，服务端按方法id 直接找到服务和方法，不需要传接口名、方法名和参数类型
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Builder
+@ToString
+public class RpcCompactRequest implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 4279371540382634176L;
+    private int methodId; // 方法id
+    private Object[] parameters; // 参数
+    private long timeout; // 客户端的超时时间，单位毫秒，0 表示不限制，见 RpcRequest#timeout
+}
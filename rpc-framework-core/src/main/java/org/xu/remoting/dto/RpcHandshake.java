@@ -0,0 +1,25 @@
+package org.xu.remoting.dto;
+
+import lombok.*;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * 握手响应，服务端下发自己提供的所有方法的id
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Builder
+@ToString
+public class RpcHandshake implements Serializable {
+    @Serial
+    private static final long serialVersionUID = -3318203419432093305L;
+    /**
+     * key: rpcServiceName （接口名 + 组 + 版本）
+     * value: 方法签名 -> 方法id
+     */
+    private Map<String, Map<String, Integer>> methodIds;
+}
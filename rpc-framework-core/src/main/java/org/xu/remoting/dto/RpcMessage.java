@@ -1,7 +1,6 @@
 package org.xu.remoting.dto;
 
 import lombok.*;
-import org.checkerframework.checker.units.qual.N;
 
 /**
  * netty 传输时自定义的消息格式
@@ -13,9 +12,11 @@ import org.checkerframework.checker.units.qual.N;
 @Builder
 @ToString
 public class RpcMessage {
+    private byte version; // 协议版本，解码时为消息头中的版本，编码时为 0 表示按当前版本编码
     private byte messageType; // 消息类型
     private byte codec; // 序列化类型
     private byte compress; // 压缩类型
-    private int requestId; // 请求id
+    private int requestId; // 请求id，由客户端连接生成，响应原样带回
+    private String legacyRequestId; // v1 消息体中的字符串请求id，回复 v1 的请求时写进响应的消息体
     private Object data; // 数据
 }
@@ -1,9 +1,12 @@
 package org.xu.remoting.dto;
 
 import lombok.*;
+import org.xu.enums.SerializationTypeEnum;
 
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 /**
  * rpc请求实体类
@@ -16,15 +19,38 @@ import java.io.Serializable;
 public class RpcRequest implements Serializable {
     @Serial
     private static final long serialVersionUID = 1905122041950251207L;
-    private String requestId; // 请求id
     private String interfaceName; // 接口名称
     private String methodName; // 方法名称
     private Object[] parameters; // 参数
     private Class<?>[] paramTypes; // 参数类型
     private String version;
     private String group;
+    private long timeout; // 客户端的超时时间，单位毫秒，服务端收到后超过这个时间还没有开始执行就不再执行，0 表示不限制
+    private transient byte codec; // 客户端发送这个请求使用的序列化方式，0 表示 kryo，只在客户端使用，不参与序列化
+    private transient String rpcServiceName; // 缓存拼接好的服务名，不参与序列化
+    private transient String methodSignature; // 缓存方法签名，形如 sayHello(org.xu.Hello)，不参与序列化
+
+    public byte getCodec() {
+        return codec != 0 ? codec : SerializationTypeEnum.KRYO.getCode();
+    }
 
     public String getRpcServiceName() {
-        return this.getInterfaceName() + this.getGroup() + this.getVersion();
+        String name = this.rpcServiceName;
+        if (name == null) {
+            name = this.getInterfaceName() + this.getGroup() + this.getVersion();
+            this.rpcServiceName = name;
+        }
+        return name;
+    }
+
+    public String getMethodSignature() {
+        String signature = this.methodSignature;
+        if (signature == null) {
+            signature = this.getMethodName() + Arrays.stream(this.getParamTypes() == null ? new Class<?>[0] : this.getParamTypes())
+                    .map(Class::getTypeName)
+                    .collect(Collectors.joining(",", "(", ")"));
+            this.methodSignature = signature;
+        }
+        return signature;
     }
 }
@@ -18,7 +18,6 @@ import java.io.Serializable;
 public class RpcResponse<T> implements Serializable {
     @Serial
     private static final long serialVersionUID = 715745410605631233L;
-    private String requestId; // 请求id
     /**
      * response code 响应状态码
      */
@@ -32,11 +31,10 @@ public class RpcResponse<T> implements Serializable {
      */
     private T data;
 
-    public static <T> RpcResponse<T> success(T data, String requestId) {
+    public static <T> RpcResponse<T> success(T data) {
         RpcResponse<T> response = new RpcResponse<>();
         response.setCode(RpcResponseCodeEnum.SUCCESS.getCode());
         response.setMessage(RpcResponseCodeEnum.SUCCESS.getMessage());
-        response.setRequestId(requestId);
         if (null != data) {
             response.setData(data);
         }
@@ -0,0 +1,128 @@
+package org.xu.remoting.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.utils.RpcConfigUtil;
+import org.xu.utils.RuntimeUtil;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端的准入控制：请求在 IO 线程收到时就检查整个服务端和所在服务同时处理的请求数，超过上限的直接拒绝，
+ * 不进入执行器的队列，过载时已经接收的请求的延迟不会被越来越长的队列拖垮。
+ * <p>
+ * 上限由 rpc.server.max.in.flight 和 rpc.server.service.max.in.flight 配置，都不配置时不做准入控制；
+ * rpc.server.limit.adaptive 为 true 时，上限按排队时间自动调整（见 {@link ConcurrencyLimit}），配置的值作为上限的最大值。
+ * 准入的请求执行前还受 rpc.server.service.max.concurrency 限制，两者的关系见 {@link RpcRequestHandler}
+ */
+@Slf4j
+public class AdmissionController {
+    private static final int DEFAULT_ADAPTIVE_MAX_LIMIT = 10_000; // 自适应时没有配置上限使用的最大值
+    private static final int INITIAL_ADAPTIVE_LIMIT = 100; // 自适应上限的初始值
+    private static final int DEFAULT_TARGET_QUEUE_DELAY_MILLIS = 5;
+
+    private final ConcurrencyLimit serverLimit; // 整个服务端的上限，没有配置时为 null
+    private final int serviceMaxInFlight; // 每个服务的上限，不大于 0 表示不限制
+    private final boolean adaptive;
+    private final long targetQueueDelayNanos;
+    private final Map<String, ConcurrencyLimit> serviceLimits = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder(); // 被拒绝的请求总数
+
+    public AdmissionController() {
+        int serverMaxInFlight = RpcConfigUtil.getIntProperty(RpcConfigEnum.SERVER_MAX_IN_FLIGHT, 0);
+        serviceMaxInFlight = RpcConfigUtil.getIntProperty(RpcConfigEnum.SERVICE_MAX_IN_FLIGHT, 0);
+        adaptive = RpcConfigUtil.getBooleanProperty(RpcConfigEnum.SERVER_LIMIT_ADAPTIVE, false);
+        targetQueueDelayNanos = TimeUnit.MILLISECONDS.toNanos(
+                RpcConfigUtil.getIntProperty(RpcConfigEnum.SERVER_LIMIT_TARGET_QUEUE_DELAY, DEFAULT_TARGET_QUEUE_DELAY_MILLIS));
+        if (serverMaxInFlight > 0 || (adaptive && serviceMaxInFlight <= 0)) {
+            serverLimit = newLimit(serverMaxInFlight > 0 ? serverMaxInFlight : DEFAULT_ADAPTIVE_MAX_LIMIT);
+        } else {
+            serverLimit = null;
+        }
+        log.info("admission control: server limit [{}], service limit [{}], adaptive [{}]",
+                serverMaxInFlight, serviceMaxInFlight, adaptive);
+    }
+
+    /**
+     * 是否配置了准入控制
+     */
+    public boolean isEnabled() {
+        return serverLimit != null || serviceMaxInFlight > 0;
+    }
+
+    /**
+     * 为请求申请名额，超过上限时返回 null
+     *
+     * @param rpcServiceName 请求的服务，未知时为 null，只检查整个服务端的上限
+     */
+    public Permit tryAcquire(String rpcServiceName) {
+        ConcurrencyLimit serviceLimit = null;
+        if (serviceMaxInFlight > 0 && rpcServiceName != null) {
+            serviceLimit = serviceLimits.computeIfAbsent(rpcServiceName, k -> newLimit(serviceMaxInFlight));
+        }
+        if (serverLimit != null && !serverLimit.tryAcquire()) {
+            rejected.increment();
+            return null;
+        }
+        if (serviceLimit != null && !serviceLimit.tryAcquire()) {
+            if (serverLimit != null) {
+                serverLimit.release();
+            }
+            rejected.increment();
+            return null;
+        }
+        return new Permit(serverLimit, serviceLimit);
+    }
+
+    /**
+     * 被拒绝的请求总数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private ConcurrencyLimit newLimit(int maxLimit) {
+        return adaptive
+                ? ConcurrencyLimit.adaptive(RuntimeUtil.cpus(), maxLimit, INITIAL_ADAPTIVE_LIMIT, targetQueueDelayNanos)
+                : ConcurrencyLimit.fixed(maxLimit);
+    }
+
+    /**
+     * 一个请求占用的名额，请求开始执行时调用 {@link #started()}，返回响应时调用 {@link #release()}
+     */
+    public static final class Permit {
+        private final ConcurrencyLimit serverLimit;
+        private final ConcurrencyLimit serviceLimit;
+        private final long admittedNanos = System.nanoTime(); // 接收请求的时间
+
+        private Permit(ConcurrencyLimit serverLimit, ConcurrencyLimit serviceLimit) {
+            this.serverLimit = serverLimit;
+            this.serviceLimit = serviceLimit;
+        }
+
+        /**
+         * 请求离开队列开始执行，记录排队时间
+         */
+        public void started() {
+            long queueDelay = System.nanoTime() - admittedNanos;
+            if (serverLimit != null) {
+                serverLimit.onQueueDelay(queueDelay);
+            }
+            if (serviceLimit != null) {
+                serviceLimit.onQueueDelay(queueDelay);
+            }
+        }
+
+        public void release() {
+            if (serverLimit != null) {
+                serverLimit.release();
+            }
+            if (serviceLimit != null) {
+                serviceLimit.release();
+            }
+        }
+    }
+}
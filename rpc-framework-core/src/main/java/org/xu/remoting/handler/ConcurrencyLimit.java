@@ -0,0 +1,124 @@
+package org.xu.remoting.handler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 同时处理的请求数上限，达到上限时新的请求直接拒绝，不再排队
+ * <p>
+ * 固定上限就是配置的值。自适应上限参考 Netflix concurrency-limits 的 gradient 算法，但比较的不是响应时间，而是请求在执行器队列中等待的时间：
+ * 每 100ms 取一次平均排队时间，超过目标值时按 目标值 / 平均排队时间 的比例（最少减半）平滑地降低上限；
+ * 没有超过目标值、并且已经用到上限的一半以上时，上限增加 sqrt(上限)。上限在 [minLimit, maxLimit] 之间变化
+ */
+public class ConcurrencyLimit {
+    private static final long UPDATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100); // 自适应上限的调整间隔
+    private static final double SMOOTHING = 0.2; // 降低上限时，新值所占的比例
+    private static final double MIN_GRADIENT = 0.5; // 一次最多降到一半
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetQueueDelayNanos; // 目标排队时间，0 表示固定上限
+    private final AtomicInteger inFlight = new AtomicInteger(); // 已经接收、还没有返回的请求数
+    private final LongAdder queueDelaySum = new LongAdder(); // 这个调整周期内的排队时间之和
+    private final LongAdder queueDelayCount = new LongAdder();
+    private volatile int limit;
+    private volatile long nextUpdateNanos;
+    private double estimatedLimit; // 平滑后的上限，只在加锁调整时读写
+
+    private ConcurrencyLimit(int minLimit, int maxLimit, int initialLimit, long targetQueueDelayNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetQueueDelayNanos = targetQueueDelayNanos;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        this.nextUpdateNanos = System.nanoTime() + UPDATE_INTERVAL_NANOS;
+    }
+
+    /**
+     * 固定上限
+     */
+    public static ConcurrencyLimit fixed(int limit) {
+        return new ConcurrencyLimit(limit, limit, limit, 0);
+    }
+
+    /**
+     * 自适应上限，从 min(maxLimit, initialLimit) 开始调整
+     */
+    public static ConcurrencyLimit adaptive(int minLimit, int maxLimit, int initialLimit, long targetQueueDelayNanos) {
+        int min = Math.max(1, Math.min(minLimit, maxLimit));
+        return new ConcurrencyLimit(min, maxLimit, Math.max(min, Math.min(initialLimit, maxLimit)), targetQueueDelayNanos);
+    }
+
+    /**
+     * 未达到上限时占用一个名额并返回 true
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求返回，归还名额
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 记录一个请求开始执行前的排队时间，自适应上限据此调整
+     */
+    public void onQueueDelay(long queueDelayNanos) {
+        if (targetQueueDelayNanos == 0) {
+            return;
+        }
+        queueDelaySum.add(queueDelayNanos);
+        queueDelayCount.increment();
+        long now = System.nanoTime();
+        if (now - nextUpdateNanos >= 0) {
+            synchronized (this) {
+                if (now - nextUpdateNanos >= 0) {
+                    nextUpdateNanos = now + UPDATE_INTERVAL_NANOS;
+                    update();
+                }
+            }
+        }
+    }
+
+    private void update() {
+        long count = queueDelayCount.sumThenReset();
+        long sum = queueDelaySum.sumThenReset();
+        if (count == 0) {
+            return;
+        }
+        double averageQueueDelay = (double) sum / count;
+        double newLimit;
+        if (averageQueueDelay > targetQueueDelayNanos) {
+            // 请求开始排队，按超出目标的程度降低上限
+            double gradient = Math.max(MIN_GRADIENT, targetQueueDelayNanos / averageQueueDelay);
+            newLimit = estimatedLimit * (1 - SMOOTHING) + estimatedLimit * gradient * SMOOTHING;
+        } else if (inFlight.get() * 2 >= estimatedLimit) {
+            // 没有排队并且上限确实被用到，试探更高的上限
+            newLimit = estimatedLimit + Math.sqrt(estimatedLimit);
+        } else {
+            return;
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
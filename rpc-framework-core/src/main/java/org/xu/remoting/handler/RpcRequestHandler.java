@@ -1,48 +1,251 @@
 package org.xu.remoting.handler;
 
 import lombok.extern.slf4j.Slf4j;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.RpcErrorMessageEnum;
+import org.xu.enums.RpcResponseCodeEnum;
 import org.xu.exception.RpcException;
 import org.xu.factory.SingletonFactory;
+import org.xu.provider.MethodInvoker;
+import org.xu.provider.ServiceInvoker;
 import org.xu.provider.ServiceProvider;
 import org.xu.provider.impl.ZkServiceProviderImpl;
+import org.xu.remoting.dto.RpcCompactRequest;
 import org.xu.remoting.dto.RpcRequest;
+import org.xu.remoting.dto.RpcResponse;
+import org.xu.utils.RpcConfigUtil;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * 处理Rpc请求，调用方法
+ * <p>
+ * 配置了 rpc.server.service.max.concurrency 时，每个服务同时执行的请求数不超过这个值，慢服务最多占住这么多线程，不会拖垮其他服务。
+ * 返回 CompletableFuture 的方法在 future 完成时才归还许可。超过上限的请求：
+ * <ul>
+ *     <li>在虚拟线程中执行时等待许可，等待只占住这个请求自己的虚拟线程</li>
+ *     <li>在平台线程（event-executor 模式下每个连接固定的线程）中执行时不等待，直接返回 OVERLOADED，
+ *     否则等待慢服务的请求会挡住同一个连接上后面所有的请求，包括其他服务的请求</li>
+ * </ul>
+ * 这个上限和 {@link AdmissionController} 的 rpc.server.service.max.in.flight 是两层：准入控制在 IO 线程收到请求时计数，
+ * 到返回响应为止，超过的直接拒绝；这里只对已经准入的请求计数执行中的部分。在虚拟线程中执行并且同时配置时，
+ * max.in.flight 减去 max.concurrency 就是每个服务最多等待的请求数，max.in.flight 不大于 max.concurrency 时这里不会等待
+ * <p>
+ * 请求带着截止时间（{@link #deadlineOf}）时，等待许可最多等到截止时间，客户端已经放弃的请求不再占用许可
  */
 @Slf4j
 public class RpcRequestHandler {
+    private static final LongAdder EXPIRED = new LongAdder(); // 过了截止时间没有执行的请求总数
 
     private final ServiceProvider serviceProvider;
+    private final int maxConcurrency; // 每个服务同时执行的最大请求数，不大于 0 表示不限制
+    private final Map<String, Semaphore> serviceSemaphores = new ConcurrentHashMap<>();
 
     public RpcRequestHandler() {
         serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
+        maxConcurrency = RpcConfigUtil.getIntProperty(RpcConfigEnum.SERVICE_MAX_CONCURRENCY, 0);
     }
 
     /**
-     * 处理rpc请求，反射调用方法并返回
+     * 请求消息体（{@link RpcRequest} 或 {@link RpcCompactRequest}）中客户端的超时时间
+     */
+    public static long timeoutOf(Object data) {
+        return data instanceof RpcCompactRequest ? ((RpcCompactRequest) data).getTimeout() : ((RpcRequest) data).getTimeout();
+    }
+
+    /**
+     * 过了截止时间没有执行的请求总数
+     */
+    public static long getExpiredCount() {
+        return EXPIRED.sum();
+    }
+
+    /**
+     * 请求消息体所属的服务名，准入控制使用，无法确定时返回 null
+     */
+    public String getRpcServiceName(Object data) {
+        if (data instanceof RpcRequest) {
+            return ((RpcRequest) data).getRpcServiceName();
+        }
+        try {
+            return serviceProvider.getMethodInvoker(((RpcCompactRequest) data).getMethodId()).getRpcServiceName();
+        } catch (RuntimeException e) {
+            // 方法id 不存在，执行时会返回失败
+            return null;
+        }
+    }
+
+    /**
+     * 执行请求消息体，通过 responder 返回响应；服务方法返回 CompletableFuture 时，等 future 完成后再返回，不占用当前线程。
+     * 各个传输的服务端共用这个流程
+     * <p>
+     * 已经过了截止时间的请求不执行，也不返回：客户端已经放弃了这个请求
+     *
+     * @param deadlineNanos 截止时间，0 表示没有截止时间
+     * @return 请求是否被执行，为 false 时不会调用 responder
+     */
+    public boolean process(Object data, long deadlineNanos, Consumer<RpcResponse<Object>> responder) {
+        if (isExpired(deadlineNanos)) {
+            EXPIRED.increment();
+            log.debug("request [{}] expired before execution, dropped", data);
+            return false;
+        }
+        Object result;
+        try {
+            if (data instanceof RpcCompactRequest) {
+                result = handle((RpcCompactRequest) data, deadlineNanos);
+            } else {
+                result = handle((RpcRequest) data, deadlineNanos);
+            }
+        } catch (ServiceOverloadedException e) {
+            log.debug("service overloaded, reject [{}]", data);
+            responder.accept(RpcResponse.fail(RpcResponseCodeEnum.OVERLOADED));
+            return true;
+        } catch (RuntimeException e) {
+            log.error("invoke [{}] failed", data, e);
+            responder.accept(RpcResponse.fail(RpcResponseCodeEnum.FAIL));
+            return true;
+        }
+        if (result instanceof CompletableFuture) {
+            ((CompletableFuture<?>) result).whenComplete((value, cause) -> {
+                if (cause != null) {
+                    log.error("async invoke [{}] failed", data, cause);
+                    responder.accept(RpcResponse.fail(RpcResponseCodeEnum.FAIL));
+                } else {
+                    responder.accept(RpcResponse.success(value));
+                }
+            });
+        } else {
+            log.info("server get result: {}", result);
+            responder.accept(RpcResponse.success(result));
+        }
+        return true;
+    }
+
+    /**
+     * 根据收到请求的时间和请求带的超时时间计算截止时间（{@link System#nanoTime()}），没有超时时间时返回 0
+     */
+    public static long deadlineOf(long receivedNanos, long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return 0;
+        }
+        long deadline = receivedNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        return deadline == 0 ? 1 : deadline;
+    }
+
+    /**
+     * 截止时间是否已过
+     */
+    public static boolean isExpired(long deadlineNanos) {
+        return deadlineNanos != 0 && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * 处理rpc请求，调用方法并返回
      */
     public Object handle(RpcRequest rpcRequest) {
-        Object service = serviceProvider.getService(rpcRequest.getRpcServiceName());
-        return invokeTargetMethod(rpcRequest, service);
+        return handle(rpcRequest, 0);
+    }
+
+    /**
+     * 处理rpc请求，调用方法并返回
+     *
+     * @param deadlineNanos 截止时间，0 表示没有截止时间
+     */
+    public Object handle(RpcRequest rpcRequest, long deadlineNanos) {
+        ServiceInvoker serviceInvoker = serviceProvider.getServiceInvoker(rpcRequest.getRpcServiceName());
+        MethodInvoker methodInvoker = serviceInvoker.getMethodInvoker(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
+        return handle(methodInvoker, rpcRequest.getParameters(), deadlineNanos);
+    }
+
+    /**
+     * 处理按方法id 调用的rpc请求，调用方法并返回
+     */
+    public Object handle(RpcCompactRequest rpcCompactRequest) {
+        return handle(rpcCompactRequest, 0);
+    }
+
+    /**
+     * 处理按方法id 调用的rpc请求，调用方法并返回
+     *
+     * @param deadlineNanos 截止时间，0 表示没有截止时间
+     */
+    public Object handle(RpcCompactRequest rpcCompactRequest, long deadlineNanos) {
+        MethodInvoker methodInvoker = serviceProvider.getMethodInvoker(rpcCompactRequest.getMethodId());
+        return handle(methodInvoker, rpcCompactRequest.getParameters(), deadlineNanos);
+    }
+
+    private Object handle(MethodInvoker methodInvoker, Object[] parameters, long deadlineNanos) {
+        if (maxConcurrency <= 0) {
+            return invokeTargetMethod(methodInvoker, parameters);
+        }
+        Semaphore semaphore = serviceSemaphores.computeIfAbsent(methodInvoker.getRpcServiceName(), k -> new Semaphore(maxConcurrency));
+        acquire(semaphore, methodInvoker, deadlineNanos);
+        boolean released = false;
+        try {
+            Object result = invokeTargetMethod(methodInvoker, parameters);
+            if (result instanceof CompletableFuture) {
+                ((CompletableFuture<?>) result).whenComplete((value, cause) -> semaphore.release());
+                released = true;
+            }
+            return result;
+        } finally {
+            if (!released) {
+                semaphore.release();
+            }
+        }
+    }
+
+    private static void acquire(Semaphore semaphore, MethodInvoker methodInvoker, long deadlineNanos) {
+        if (!Thread.currentThread().isVirtual()) {
+            // 平台线程不等待，等待会挡住这个线程上后面的请求
+            if (!semaphore.tryAcquire()) {
+                throw new ServiceOverloadedException(methodInvoker.getSignature());
+            }
+            return;
+        }
+        if (deadlineNanos == 0) {
+            semaphore.acquireUninterruptibly();
+            return;
+        }
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            throw new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT, methodInvoker.getSignature());
+        }
     }
 
     /**
-     * 反射调用目标方法
+     * 通过注册时建立好的 MethodHandle 调用目标方法
      */
-    private Object invokeTargetMethod(RpcRequest rpcRequest, Object service) {
+    private Object invokeTargetMethod(MethodInvoker methodInvoker, Object[] parameters) {
         Object result;
         try {
-            Method method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
-            result = method.invoke(service, rpcRequest.getParameters());
-            log.info("service:[{}] successful invoke method:[{}]", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
-        } catch (InvocationTargetException | IllegalAccessException | NoSuchMethodException e) {
+            result = methodInvoker.invoke(parameters);
+            log.debug("service:[{}] successful invoke method:[{}]", methodInvoker.getRpcServiceName(), methodInvoker.getSignature());
+        } catch (Throwable e) {
             throw new RpcException(e.getMessage(), e);
         }
         return result;
     }
 
+    /**
+     * 服务同时执行的请求数已经达到上限，请求没有执行
+     */
+    private static final class ServiceOverloadedException extends RpcException {
+        private ServiceOverloadedException(String detail) {
+            super(RpcErrorMessageEnum.SERVICE_OVERLOADED, detail);
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package org.xu.remoting.transport.netty;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.Future;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.utils.RpcConfigUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并 flush，多条消息一次写入 socket，减少系统调用
+ * <p>
+ * 收到 flush 时先不真正 flush，满足下面任一条件时才 flush：
+ * <ul>
+ *     <li>攒够 maxMessages 次 flush</li>
+ *     <li>正在读数据时，这一批数据读完（channelReadComplete），服务端处理完一批请求后一起返回</li>
+ *     <li>没有在读数据时，等了 maxDelayMicros 微秒；为 0 时等当前事件循环中的这批任务执行完</li>
+ *     <li>连接不可写、关闭、出现异常</li>
+ * </ul>
+ * netty 自带的 FlushConsolidationHandler 只能按次数合并，不能按时间合并，所以这里自己实现
+ */
+public class FlushConsolidationHandler extends ChannelDuplexHandler {
+    private static final int DEFAULT_MAX_MESSAGES = 64;
+
+    private final int maxMessages; // 最多攒多少次 flush
+    private final long maxDelayMicros; // 没有在读数据时最多等多久
+    private final Runnable flushTask;
+    private ChannelHandlerContext ctx;
+    private int pendingFlushes; // 还没有真正执行的 flush 次数
+    private boolean readInProgress;
+    private Future<?> scheduledFlush;
+
+    public FlushConsolidationHandler(int maxMessages, long maxDelayMicros) {
+        this.maxMessages = Math.max(1, maxMessages);
+        this.maxDelayMicros = Math.max(0, maxDelayMicros);
+        this.flushTask = () -> {
+            scheduledFlush = null;
+            if (pendingFlushes > 0 && !readInProgress) {
+                flushNow(ctx);
+            }
+        };
+    }
+
+    /**
+     * 按 rpc.properties 中的配置创建，没有开启合并 flush 时返回 null
+     */
+    public static FlushConsolidationHandler fromConfig() {
+        if (!RpcConfigUtil.getBooleanProperty(RpcConfigEnum.FLUSH_CONSOLIDATION, false)) {
+            return null;
+        }
+        return new FlushConsolidationHandler(
+                RpcConfigUtil.getIntProperty(RpcConfigEnum.FLUSH_MAX_MESSAGES, DEFAULT_MAX_MESSAGES),
+                RpcConfigUtil.getIntProperty(RpcConfigEnum.FLUSH_MAX_DELAY, 0));
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (++pendingFlushes >= maxMessages) {
+            flushNow(ctx);
+        } else if (!readInProgress && scheduledFlush == null) {
+            // 没有在读数据，读完成时不会 flush，需要按时间 flush
+            scheduledFlush = maxDelayMicros == 0
+                    ? ctx.channel().eventLoop().submit(flushTask)
+                    : ctx.channel().eventLoop().schedule(flushTask, maxDelayMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        readInProgress = false;
+        flushIfNeeded(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            flushIfNeeded(ctx); // 不可写时把攒着的数据先写出去
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        flushIfNeeded(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushIfNeeded(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushIfNeeded(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        flushIfNeeded(ctx);
+    }
+
+    private void flushIfNeeded(ChannelHandlerContext ctx) {
+        if (pendingFlushes > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        pendingFlushes = 0;
+        ctx.flush();
+    }
+}
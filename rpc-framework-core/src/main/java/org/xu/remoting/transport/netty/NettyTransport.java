@@ -0,0 +1,126 @@
+package org.xu.remoting.transport.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.TransportTypeEnum;
+import org.xu.utils.RpcConfigUtil;
+
+/**
+ * netty 的 IO 实现和 socket 参数
+ * <p>
+ * 由 rpc.transport.type 选择：auto 在 linux 上可以加载 epoll 本地库时使用 epoll，否则使用 nio；
+ * 配置了 epoll 但不可用时打印警告并退回 nio。epoll 直接调用系统接口，比 nio 少一层 selector 的开销，并且支持 SO_REUSEPORT，
+ * 服务端可以多次绑定同一个端口，由内核把新连接分给多个接收线程
+ */
+@Slf4j
+public final class NettyTransport {
+    private static final int DEFAULT_LOW_WATER_MARK = 32 * 1024; // 和 netty 的默认值相同
+    private static final int DEFAULT_HIGH_WATER_MARK = 64 * 1024;
+
+    private final boolean epoll;
+    private final int sendBufferSize; // 不大于 0 时使用系统默认值
+    private final int receiveBufferSize;
+    private final WriteBufferWaterMark writeBufferWaterMark;
+
+    private NettyTransport(boolean epoll, int sendBufferSize, int receiveBufferSize, WriteBufferWaterMark writeBufferWaterMark) {
+        this.epoll = epoll;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.writeBufferWaterMark = writeBufferWaterMark;
+    }
+
+    /**
+     * 按 rpc.properties 中的配置创建
+     */
+    public static NettyTransport fromConfig() {
+        TransportTypeEnum type = TransportTypeEnum.getType(
+                RpcConfigUtil.getProperty(RpcConfigEnum.TRANSPORT_TYPE, TransportTypeEnum.AUTO.getName()));
+        boolean epoll = false;
+        if (type != TransportTypeEnum.NIO) {
+            epoll = Epoll.isAvailable();
+            if (!epoll && type == TransportTypeEnum.EPOLL) {
+                log.warn("epoll is not available, fall back to nio: {}", Epoll.unavailabilityCause().toString());
+            }
+        }
+        int lowWaterMark = RpcConfigUtil.getIntProperty(RpcConfigEnum.WRITE_BUFFER_LOW_WATER_MARK, DEFAULT_LOW_WATER_MARK);
+        int highWaterMark = RpcConfigUtil.getIntProperty(RpcConfigEnum.WRITE_BUFFER_HIGH_WATER_MARK, Math.max(DEFAULT_HIGH_WATER_MARK, lowWaterMark));
+        return new NettyTransport(epoll,
+                RpcConfigUtil.getIntProperty(RpcConfigEnum.SOCKET_SEND_BUFFER, 0),
+                RpcConfigUtil.getIntProperty(RpcConfigEnum.SOCKET_RECEIVE_BUFFER, 0),
+                new WriteBufferWaterMark(lowWaterMark, highWaterMark));
+    }
+
+    public boolean isEpoll() {
+        return epoll;
+    }
+
+    public String getName() {
+        return epoll ? TransportTypeEnum.EPOLL.getName() : TransportTypeEnum.NIO.getName();
+    }
+
+    /**
+     * 是否支持 SO_REUSEPORT 多次绑定同一端口
+     */
+    public boolean supportsReusePort() {
+        return epoll;
+    }
+
+    /**
+     * 创建事件循环组，threads 为 0 时使用 netty 默认的线程数（cpu 核数 * 2）
+     */
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        return epoll ? new EpollEventLoopGroup(threads) : new NioEventLoopGroup(threads);
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * 服务端的 socket 参数：接收缓冲区设置在监听 socket 上，新连接从握手开始就使用这个大小；reusePort 时开启 SO_REUSEPORT
+     */
+    public void configure(ServerBootstrap serverBootstrap, boolean reusePort) {
+        if (receiveBufferSize > 0) {
+            serverBootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (reusePort) {
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        if (sendBufferSize > 0) {
+            serverBootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        serverBootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark);
+    }
+
+    /**
+     * 客户端的 socket 参数
+     */
+    public void configure(Bootstrap bootstrap) {
+        if (sendBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark);
+    }
+}
@@ -0,0 +1,197 @@
+package org.xu.remoting.transport.netty.client;
+
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 到一个服务端地址的连接池
+ * <p>
+ * 连接按需建立：池为空时建立第一个连接；每个连接上都有未返回的请求时再多建一个，直到 maxConnections。
+ * 选择连接时优先选可写的、未返回请求最少的连接。除了最后一个连接，空闲超过 idleTimeoutMillis 的连接会被关闭。
+ * 新建连接在锁内登记连接中的 future，并发获取同一个地址的线程不会重复连接
+ */
+@Slf4j
+public class ChannelPool {
+    private static final long SHRINK_CHECK_INTERVAL_MILLIS = 1000; // 检查空闲连接的间隔
+    private static final long DRAIN_CHECK_INTERVAL_MILLIS = 100; // 优雅关闭时检查未返回请求的间隔
+
+    private final InetSocketAddress address;
+    private final int maxConnections;
+    private final long idleTimeoutMillis;
+    private final Function<InetSocketAddress, CompletableFuture<Channel>> connector;
+    private volatile PooledChannel[] channels = new PooledChannel[0]; // 写时复制，选择连接时不加锁
+    private volatile long lastShrinkCheck = System.currentTimeMillis();
+
+    public ChannelPool(InetSocketAddress address, int maxConnections, long idleTimeoutMillis,
+                       Function<InetSocketAddress, CompletableFuture<Channel>> connector) {
+        this.address = address;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.connector = connector;
+    }
+
+    /**
+     * 获取一个连接，返回的 future 在连接建立后完成
+     */
+    public CompletableFuture<Channel> acquire() {
+        shrinkIfNeeded();
+        PooledChannel best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        PooledChannel connecting = null;
+        for (PooledChannel pooledChannel : channels) {
+            Channel channel = pooledChannel.channel();
+            if (channel == null) {
+                if (!pooledChannel.future.isDone()) {
+                    connecting = pooledChannel;
+                }
+                continue;
+            }
+            if (!channel.isActive()) {
+                continue;
+            }
+            // 不可写的连接当作很忙，只有都不可写时才会选到
+            int inFlight = UnprocessedRequests.of(channel).getInFlightCount() + (channel.isWritable() ? 0 : maxConnections << 16);
+            if (inFlight < bestInFlight) {
+                best = pooledChannel;
+                bestInFlight = inFlight;
+            }
+        }
+        if (best == null) {
+            // 没有可用的连接，等正在建立的连接，或者新建一个
+            return connecting != null ? connecting.future : grow(true).future;
+        }
+        if (bestInFlight > 0 && connecting == null) {
+            grow(false); // 所有连接都忙，后台多建一个连接，当前请求还是用已有的连接
+        }
+        best.lastUsed = System.currentTimeMillis();
+        return best.future;
+    }
+
+    /**
+     * 关闭池中所有连接
+     */
+    public synchronized void close() {
+        for (PooledChannel pooledChannel : channels) {
+            pooledChannel.close();
+        }
+        channels = new PooledChannel[0];
+    }
+
+    /**
+     * 优雅关闭池中所有连接：没有未返回请求的连接立即关闭，其他连接等请求都返回后再关闭，最多等 timeoutMillis
+     */
+    public synchronized void closeGracefully(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (PooledChannel pooledChannel : channels) {
+            pooledChannel.future.thenAccept(channel -> closeWhenDrained(channel, deadline));
+        }
+        channels = new PooledChannel[0];
+    }
+
+    private static void closeWhenDrained(Channel channel, long deadline) {
+        if (UnprocessedRequests.of(channel).getInFlightCount() == 0 || System.currentTimeMillis() >= deadline) {
+            channel.close();
+            return;
+        }
+        channel.eventLoop().schedule(() -> closeWhenDrained(channel, deadline), DRAIN_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public int size() {
+        return channels.length;
+    }
+
+    /**
+     * 新建一个连接
+     *
+     * @param force 为 true 时即使已经达到最大连接数也新建（池中已经没有可用的连接）
+     */
+    private synchronized PooledChannel grow(boolean force) {
+        PooledChannel[] current = channels;
+        // 加锁后再检查一次，其他线程可能已经在建立连接
+        for (PooledChannel pooledChannel : current) {
+            if (!pooledChannel.future.isDone()) {
+                return pooledChannel;
+            }
+        }
+        if (!force && current.length >= maxConnections) {
+            return null;
+        }
+        PooledChannel pooledChannel = new PooledChannel(connector.apply(address));
+        pooledChannel.future.whenComplete((channel, cause) -> {
+            if (cause != null) {
+                remove(pooledChannel);
+            } else {
+                // 连接断开时从池中移除
+                channel.closeFuture().addListener(f -> remove(pooledChannel));
+            }
+        });
+        PooledChannel[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = pooledChannel;
+        channels = next;
+        log.info("channel pool [{}] grows to [{}]", address, next.length);
+        return pooledChannel;
+    }
+
+    private synchronized void remove(PooledChannel pooledChannel) {
+        PooledChannel[] current = channels;
+        int index = Arrays.asList(current).indexOf(pooledChannel);
+        if (index < 0) {
+            return;
+        }
+        PooledChannel[] next = new PooledChannel[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+        channels = next;
+    }
+
+    /**
+     * 关闭空闲的多余连接，每个地址至少保留一个连接
+     */
+    private void shrinkIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - lastShrinkCheck < SHRINK_CHECK_INTERVAL_MILLIS || channels.length <= 1) {
+            return;
+        }
+        lastShrinkCheck = now;
+        synchronized (this) {
+            for (PooledChannel pooledChannel : channels) {
+                if (channels.length <= 1) {
+                    break;
+                }
+                Channel channel = pooledChannel.channel();
+                if (channel != null && now - pooledChannel.lastUsed > idleTimeoutMillis
+                        && UnprocessedRequests.of(channel).getInFlightCount() == 0) {
+                    log.info("close idle channel [{}]", channel);
+                    remove(pooledChannel);
+                    pooledChannel.close();
+                }
+            }
+        }
+    }
+
+    private static final class PooledChannel {
+        private final CompletableFuture<Channel> future; // 连接建立后完成
+        private volatile long lastUsed = System.currentTimeMillis(); // 最后一次被选中的时间
+
+        private PooledChannel(CompletableFuture<Channel> future) {
+            this.future = future;
+        }
+
+        /**
+         * 已经建立好的连接，还在连接或者连接失败时返回 null
+         */
+        private Channel channel() {
+            return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+        }
+
+        private void close() {
+            future.thenAccept(Channel::close);
+        }
+    }
+}
@@ -2,44 +2,64 @@ package org.xu.remoting.transport.netty.client;
 
 import io.netty.channel.Channel;
 import lombok.extern.slf4j.Slf4j;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.utils.RpcConfigUtil;
 
 import java.net.InetSocketAddress;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
- * 存储和获取Channel对象，
+ * 存储和获取Channel对象，每个服务端地址一个连接池
  */
 @Slf4j
 public class ChannelProvider {
-    private final Map<String, Channel> channelMap;
+    private static final int DEFAULT_MAX_CONNECTIONS = 4;
+    private static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+    private static final long DRAIN_TIMEOUT_MILLIS = 10_000; // 地址下线后，等待未返回请求的最长时间
+
+    private final Map<InetSocketAddress, ChannelPool> channelPools;
+    private final int maxConnections; // 每个地址最多建立的连接数
+    private final long idleTimeoutMillis; // 多余的连接空闲多久后关闭
+
     public ChannelProvider() {
-        channelMap = new ConcurrentHashMap<>();
+        channelPools = new ConcurrentHashMap<>();
+        maxConnections = RpcConfigUtil.getIntProperty(RpcConfigEnum.CLIENT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+        idleTimeoutMillis = RpcConfigUtil.getIntProperty(RpcConfigEnum.CLIENT_CONNECTION_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT_MILLIS);
     }
 
-    public Channel get(InetSocketAddress inetSocketAddress) {
-        String key = inetSocketAddress.toString();
-        // 确定是否存在对应地址的连接
-        if (channelMap.containsKey(key)) {
-            Channel channel = channelMap.get(key);
-            // 确定连接是否可用，如果是，直接获取
-            if (channel != null && channel.isActive()) {
-                return channel;
-            } else {
-                channelMap.remove(key);
-            }
-        }
-        return null;
+    /**
+     * 获取到 inetSocketAddress 的一个连接，没有可用的连接时通过 connector 建立
+     */
+    public CompletableFuture<Channel> get(InetSocketAddress inetSocketAddress,
+                                          Function<InetSocketAddress, CompletableFuture<Channel>> connector) {
+        return channelPools.computeIfAbsent(inetSocketAddress,
+                k -> new ChannelPool(k, maxConnections, idleTimeoutMillis, connector)).acquire();
     }
 
-    public void set(InetSocketAddress inetSocketAddress, Channel channel) {
-        String key = inetSocketAddress.toString();
-        channelMap.put(key, channel);
+    /**
+     * 预先建立到 inetSocketAddress 的连接，已经有连接时什么也不做
+     */
+    public void prewarm(InetSocketAddress inetSocketAddress,
+                        Function<InetSocketAddress, CompletableFuture<Channel>> connector) {
+        ChannelPool channelPool = channelPools.computeIfAbsent(inetSocketAddress,
+                k -> new ChannelPool(k, maxConnections, idleTimeoutMillis, connector));
+        if (channelPool.size() == 0) {
+            channelPool.acquire();
+            log.info("prewarm connection to [{}]", inetSocketAddress);
+        }
     }
 
+    /**
+     * 地址下线，移除连接池。新请求不会再选到这个地址，连接在未返回的请求完成后关闭
+     */
     public void remove(InetSocketAddress inetSocketAddress) {
-        String key = inetSocketAddress.toString();
-        channelMap.remove(key);
-        log.info("Channel map size :[{}]", channelMap.size());
+        ChannelPool channelPool = channelPools.remove(inetSocketAddress);
+        if (channelPool != null) {
+            channelPool.closeGracefully(DRAIN_TIMEOUT_MILLIS);
+        }
+        log.info("Channel map size :[{}]", channelPools.size());
     }
 }
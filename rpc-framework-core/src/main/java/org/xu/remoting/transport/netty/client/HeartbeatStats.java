@@ -0,0 +1,79 @@
+package org.xu.remoting.transport.netty.client;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * 连接的心跳统计，每个连接一份，挂在 channel 的属性上
+ * <p>
+ * 发送心跳请求时记下序号和时间，收到序号一致的心跳响应时计算往返时间（RTT），平均 RTT 按指数加权平均计算
+ */
+public class HeartbeatStats {
+    private static final AttributeKey<HeartbeatStats> ATTRIBUTE_KEY = AttributeKey.valueOf("heartbeatStats");
+    private static final int EWMA_SHIFT = 3; // 新样本的权重为 1/8
+
+    private int nextPingId; // 只在连接的 IO 线程中访问
+    private volatile int pendingPingId = -1; // 还没有收到响应的心跳请求的序号
+    private volatile long pendingPingNanos; // 还没有收到响应的心跳请求的发送时间
+    private volatile long lastRttNanos;
+    private volatile long avgRttNanos;
+    private volatile long lastPongMillis; // 最后一次收到心跳响应的时间
+
+    /**
+     * 获取 channel 对应的心跳统计，没有时创建
+     */
+    public static HeartbeatStats of(Channel channel) {
+        HeartbeatStats heartbeatStats = channel.attr(ATTRIBUTE_KEY).get();
+        if (heartbeatStats == null) {
+            HeartbeatStats created = new HeartbeatStats();
+            heartbeatStats = channel.attr(ATTRIBUTE_KEY).setIfAbsent(created);
+            if (heartbeatStats == null) {
+                heartbeatStats = created;
+            }
+        }
+        return heartbeatStats;
+    }
+
+    /**
+     * 记录一次心跳请求，返回心跳请求的序号
+     */
+    public int ping() {
+        int pingId = nextPingId++;
+        pendingPingNanos = System.nanoTime();
+        pendingPingId = pingId;
+        return pingId;
+    }
+
+    /**
+     * 收到心跳响应，序号和最近一次心跳请求一致时更新 RTT
+     */
+    public void pong(int pingId) {
+        lastPongMillis = System.currentTimeMillis();
+        if (pingId != pendingPingId) {
+            return;
+        }
+        pendingPingId = -1;
+        long rtt = System.nanoTime() - pendingPingNanos;
+        lastRttNanos = rtt;
+        long avg = avgRttNanos;
+        avgRttNanos = avg == 0 ? rtt : avg + ((rtt - avg) >> EWMA_SHIFT);
+    }
+
+    /**
+     * 最近一次心跳的往返时间，单位纳秒，还没有收到过心跳响应时为 0
+     */
+    public long getLastRttNanos() {
+        return lastRttNanos;
+    }
+
+    /**
+     * 心跳往返时间的指数加权平均，单位纳秒，还没有收到过心跳响应时为 0
+     */
+    public long getAvgRttNanos() {
+        return avgRttNanos;
+    }
+
+    public long getLastPongMillis() {
+        return lastPongMillis;
+    }
+}
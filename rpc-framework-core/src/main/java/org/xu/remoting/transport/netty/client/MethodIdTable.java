@@ -0,0 +1,60 @@
+package org.xu.remoting.transport.netty.client;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import org.xu.remoting.dto.RpcHandshake;
+import org.xu.remoting.dto.RpcRequest;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 服务端下发的方法表，每个连接一份，挂在 channel 的属性上
+ * <p>
+ * 握手完成前方法表为空，请求按完整的形式发送；握手完成后，服务端认识的方法只发送方法id 和参数
+ */
+public class MethodIdTable {
+    private static final AttributeKey<MethodIdTable> ATTRIBUTE_KEY = AttributeKey.valueOf("methodIdTable");
+    public static final int UNKNOWN_METHOD_ID = -1;
+
+    /**
+     * key: rpcServiceName
+     * value: 方法签名 -> 方法id
+     */
+    private volatile Map<String, Map<String, Integer>> methodIds = Collections.emptyMap();
+
+    /**
+     * 获取 channel 对应的方法表，没有时创建
+     */
+    public static MethodIdTable of(Channel channel) {
+        MethodIdTable methodIdTable = channel.attr(ATTRIBUTE_KEY).get();
+        if (methodIdTable == null) {
+            MethodIdTable created = new MethodIdTable();
+            methodIdTable = channel.attr(ATTRIBUTE_KEY).setIfAbsent(created);
+            if (methodIdTable == null) {
+                methodIdTable = created;
+            }
+        }
+        return methodIdTable;
+    }
+
+    /**
+     * 收到握手响应时更新方法表
+     */
+    public void update(RpcHandshake rpcHandshake) {
+        Map<String, Map<String, Integer>> received = rpcHandshake.getMethodIds();
+        methodIds = received == null ? Collections.emptyMap() : received;
+    }
+
+    /**
+     * 请求对应的方法id，服务端没有下发这个方法时返回 UNKNOWN_METHOD_ID
+     */
+    public int getMethodId(RpcRequest rpcRequest) {
+        Map<String, Integer> serviceMethodIds = methodIds.get(rpcRequest.getRpcServiceName());
+        if (serviceMethodIds == null) {
+            return UNKNOWN_METHOD_ID;
+        }
+        Integer methodId = serviceMethodIds.get(rpcRequest.getMethodSignature());
+        return methodId == null ? UNKNOWN_METHOD_ID : methodId;
+    }
+}
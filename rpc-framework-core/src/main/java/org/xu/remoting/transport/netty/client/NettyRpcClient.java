@@ -1,30 +1,41 @@
 package org.xu.remoting.transport.netty.client;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.timeout.IdleStateHandler;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.xu.enums.CompressTypeEnum;
-import org.xu.enums.SerializationTypeEnum;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.RpcErrorMessageEnum;
 import org.xu.enums.ServiceDiscoveryEnum;
+import org.xu.exception.RpcException;
 import org.xu.extension.ExtensionLoader;
 import org.xu.factory.SingletonFactory;
+import org.xu.loadbalance.EndpointStats;
 import org.xu.registry.ServiceDiscovery;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.registry.ServiceEndpointListener;
 import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.RpcCompactRequest;
 import org.xu.remoting.dto.RpcMessage;
 import org.xu.remoting.dto.RpcRequest;
 import org.xu.remoting.dto.RpcResponse;
 import org.xu.remoting.transport.RpcRequestTransport;
+import org.xu.remoting.transport.netty.FlushConsolidationHandler;
+import org.xu.remoting.transport.netty.NettyTransport;
 import org.xu.remoting.transport.netty.codec.RpcMessageDecoder;
 import org.xu.remoting.transport.netty.codec.RpcMessageEncoder;
+import org.xu.utils.RpcConfigUtil;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -36,34 +47,64 @@ public class NettyRpcClient implements RpcRequestTransport {
 
     private final ServiceDiscovery serviceDiscovery;
     private final ChannelProvider channelProvider; // 保存channel重用，避免重复连接服务端
-    private final UnprocessedRequests unprocessedRequests; // 用CompletableFuture存放的返回结果
     private final Bootstrap bootstrap;
     private final EventLoopGroup eventLoopGroup;
+    private final byte compressType; // 请求使用的压缩方式
+    private final ServiceEndpointListener serviceEndpointListener;
 
     public NettyRpcClient() {
         // 初始化资源
-        eventLoopGroup = new NioEventLoopGroup();
+        NettyTransport transport = NettyTransport.fromConfig();
+        eventLoopGroup = transport.newEventLoopGroup(0);
         bootstrap = new Bootstrap();
         bootstrap.group(eventLoopGroup)
-                .channel(NioSocketChannel.class)
+                .channel(transport.socketChannelClass())
                 .handler(new LoggingHandler(LogLevel.INFO))
                 // 连接的超时时间
                 // 如果超过此时间或无法建立连接，则连接失败
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
+                // 使用池化的内存分配器，编码器从中分配直接内存
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                 .handler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel socketChannel) throws Exception {
                         ChannelPipeline p = socketChannel.pipeline();
-                        // 如果在5秒内没有数据发送到服务器，则发送心跳请求
-                        p.addLast(new IdleStateHandler(0, 5, 0, TimeUnit.SECONDS));
+                        // 开启合并 flush 时，放在最靠近 socket 的位置
+                        FlushConsolidationHandler flushConsolidationHandler = FlushConsolidationHandler.fromConfig();
+                        if (flushConsolidationHandler != null) {
+                            p.addLast(flushConsolidationHandler);
+                        }
+                        // 如果在5秒内没有数据发送到服务器，则发送心跳请求；15秒内没有收到任何数据（包括心跳响应），则关闭连接
+                        p.addLast(new IdleStateHandler(15, 5, 0, TimeUnit.SECONDS));
                         p.addLast(new RpcMessageEncoder());
                         p.addLast(new RpcMessageDecoder());
                         p.addLast(new NettyRpcClientHandler());
                     }
                 });
-        this.serviceDiscovery = ExtensionLoader.getExtensionLoader(ServiceDiscovery.class).getExtension(ServiceDiscoveryEnum.ZK.getName());
+        transport.configure(bootstrap);
+        log.info("client transport: [{}]", transport.getName());
+        this.serviceDiscovery = ExtensionLoader.getExtensionLoader(ServiceDiscovery.class).getExtension(
+                RpcConfigUtil.getProperty(RpcConfigEnum.REGISTRY, ServiceDiscoveryEnum.ZK.getName()));
         this.channelProvider = SingletonFactory.getInstance(ChannelProvider.class);
-        this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
+        // 注册中心推送地址变化：下线的地址关闭连接，新增的地址提前建立连接
+        this.serviceEndpointListener = new ServiceEndpointListener() {
+            @Override
+            public void endpointsAdded(List<ServiceEndpoint> added) {
+                for (ServiceEndpoint serviceEndpoint : added) {
+                    channelProvider.prewarm(serviceEndpoint.getInetSocketAddress(), NettyRpcClient.this::doConnect);
+                }
+            }
+
+            @Override
+            public void endpointsRemoved(List<ServiceEndpoint> removed) {
+                for (ServiceEndpoint serviceEndpoint : removed) {
+                    channelProvider.remove(serviceEndpoint.getInetSocketAddress());
+                    EndpointStats.remove(serviceEndpoint.getAddress());
+                }
+            }
+        };
+        serviceDiscovery.addServiceEndpointListener(serviceEndpointListener);
+        this.compressType = CompressTypeEnum.getCode(RpcConfigUtil.getProperty(RpcConfigEnum.COMPRESS_TYPE, CompressTypeEnum.GZIP.getName()));
     }
 
     @Override
@@ -72,58 +113,120 @@ public class NettyRpcClient implements RpcRequestTransport {
         CompletableFuture<RpcResponse<Object>> resultFuture = new CompletableFuture<>();
         // 获取服务地址
         InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest);
-        // 连接服务地址，获取channel
-        Channel channel = getChannel(inetSocketAddress);
-        if (channel.isActive()) {
-            // 将请求结果放进未处理完成的数据结构中
-            unprocessedRequests.put(rpcRequest.getRequestId(), resultFuture);
-            RpcMessage rpcMessage = RpcMessage.builder().data(rpcRequest)
-                    .codec(SerializationTypeEnum.KRYO.getCode())
-                    .compress(CompressTypeEnum.GZIP.getCode())
-                    .messageType(RpcConstants.REQUEST_TYPE).build();
-            channel.writeAndFlush(rpcMessage).addListener((ChannelFutureListener) future -> {
-                if (future.isSuccess()) {
-                    log.info("client send message: [{}]", rpcMessage);
+        // 从地址对应的连接池中选一个连接，没有可用的连接时建立新连接，不阻塞调用线程
+        CompletableFuture<Channel> channelFuture = channelProvider.get(inetSocketAddress, this::doConnect);
+        if (channelFuture.isDone() && !channelFuture.isCompletedExceptionally()) {
+            send(channelFuture.join(), rpcRequest, resultFuture, true);
+        } else {
+            // 连接还在建立中，请求排在连接后面，连接建立后发送；连接失败时请求立即失败
+            channelFuture.whenComplete((channel, cause) -> {
+                if (cause != null) {
+                    resultFuture.completeExceptionally(new RpcException(
+                            RpcErrorMessageEnum.CLIENT_CONNECT_SERVER_FAILURE, inetSocketAddress.toString(), cause));
                 } else {
-                    future.channel().close();
-                    resultFuture.completeExceptionally(future.cause());
-                    log.error("Send failed:", future.cause());
+                    send(channel, rpcRequest, resultFuture, true);
                 }
             });
-        } else {
-            throw new IllegalStateException();
         }
         return resultFuture;
     }
 
-    private Channel getChannel(InetSocketAddress inetSocketAddress) {
-        Channel channel = channelProvider.get(inetSocketAddress);
-        if (channel == null) {
-            channel = doConnect(inetSocketAddress);
-            channelProvider.set(inetSocketAddress, channel);
+    /**
+     * 批量发送请求，发往同一个连接的请求在事件循环中一起写入，只 flush 一次
+     *
+     * @return 每个请求对应的返回结果，顺序和 rpcRequests 一致
+     */
+    public List<CompletableFuture<RpcResponse<Object>>> sendRpcRequests(List<RpcRequest> rpcRequests) {
+        List<CompletableFuture<RpcResponse<Object>>> resultFutures = new ArrayList<>(rpcRequests.size());
+        Map<Channel, List<Runnable>> batches = new HashMap<>(); // 连接 -> 要写入这个连接的请求
+        for (RpcRequest rpcRequest : rpcRequests) {
+            InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest);
+            CompletableFuture<Channel> channelFuture = channelProvider.get(inetSocketAddress, this::doConnect);
+            if (channelFuture.isDone() && !channelFuture.isCompletedExceptionally()) {
+                CompletableFuture<RpcResponse<Object>> resultFuture = new CompletableFuture<>();
+                Channel channel = channelFuture.join();
+                batches.computeIfAbsent(channel, k -> new ArrayList<>()).add(() -> send(channel, rpcRequest, resultFuture, false));
+                resultFutures.add(resultFuture);
+            } else {
+                // 连接还没有建立好，和单个请求一样等连接建立后发送
+                resultFutures.add(toResponseFuture(sendRpcRequest(rpcRequest)));
+            }
         }
-        return channel;
+        batches.forEach((channel, writes) -> channel.eventLoop().execute(() -> {
+            for (Runnable write : writes) {
+                write.run();
+            }
+            channel.flush();
+        }));
+        return resultFutures;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<RpcResponse<Object>> toResponseFuture(Object result) {
+        return (CompletableFuture<RpcResponse<Object>>) result;
+    }
+
+    /**
+     * 写入一个请求
+     *
+     * @param flush 是否立即 flush，批量发送时由调用方统一 flush
+     */
+    private void send(Channel channel, RpcRequest rpcRequest, CompletableFuture<RpcResponse<Object>> resultFuture, boolean flush) {
+        if (!channel.isActive()) {
+            resultFuture.completeExceptionally(new RpcException(
+                    RpcErrorMessageEnum.CLIENT_CONNECT_SERVER_FAILURE, String.valueOf(channel.remoteAddress())));
+            return;
+        }
+        // 将请求结果放进连接的未处理完成的数据结构中，并由连接分配请求id
+        UnprocessedRequests unprocessedRequests = UnprocessedRequests.of(channel);
+        // 请求带着超时时间时按它设置超时，到时间后移除请求并以超时异常结束
+        int requestId = rpcRequest.getTimeout() > 0
+                ? unprocessedRequests.put(resultFuture, rpcRequest.getTimeout()) : unprocessedRequests.put(resultFuture);
+        RpcMessage rpcMessage = RpcMessage.builder()
+                .codec(rpcRequest.getCodec())
+                .compress(compressType)
+                .requestId(requestId).build();
+        // 服务端下发过这个方法的id 时只发送方法id 和参数，否则发送完整的请求
+        int methodId = MethodIdTable.of(channel).getMethodId(rpcRequest);
+        if (methodId != MethodIdTable.UNKNOWN_METHOD_ID) {
+            rpcMessage.setMessageType(RpcConstants.COMPACT_REQUEST_TYPE);
+            rpcMessage.setData(new RpcCompactRequest(methodId, rpcRequest.getParameters(), rpcRequest.getTimeout()));
+        } else {
+            rpcMessage.setMessageType(RpcConstants.REQUEST_TYPE);
+            rpcMessage.setData(rpcRequest);
+        }
+        ChannelFuture writeFuture = flush ? channel.writeAndFlush(rpcMessage) : channel.write(rpcMessage);
+        writeFuture.addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                log.info("client send message: [{}]", rpcMessage);
+            } else {
+                future.channel().close();
+                unprocessedRequests.remove(requestId);
+                resultFuture.completeExceptionally(future.cause());
+                log.error("Send failed:", future.cause());
+            }
+        });
     }
 
     public void close() {
+        serviceDiscovery.removeServiceEndpointListener(serviceEndpointListener);
         eventLoopGroup.shutdownGracefully();
     }
 
     /**
-     * 连接服务并且获取channel，
+     * 连接服务，返回的 future 在连接建立后完成，连接失败时异常完成
      */
-    @SneakyThrows
-    private Channel doConnect(InetSocketAddress inetSocketAddress) {
+    private CompletableFuture<Channel> doConnect(InetSocketAddress inetSocketAddress) {
         CompletableFuture<Channel> completableFuture = new CompletableFuture<>();
         bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
             if (future.isSuccess()) {
                 log.info("The client has connected [{}] successful!", inetSocketAddress.toString());
                 completableFuture.complete(future.channel());
             } else {
-                throw new IllegalStateException();
+                completableFuture.completeExceptionally(future.cause());
             }
         });
-        return completableFuture.get();
+        return completableFuture;
     }
 
 }
@@ -1,13 +1,18 @@
 package org.xu.remoting.transport.netty.client;
 
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.xu.factory.SingletonFactory;
+import org.xu.enums.CompressTypeEnum;
+import org.xu.enums.RpcErrorMessageEnum;
+import org.xu.enums.SerializationTypeEnum;
+import org.xu.exception.RpcException;
 import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.RpcHandshake;
 import org.xu.remoting.dto.RpcMessage;
 import org.xu.remoting.dto.RpcResponse;
 
@@ -17,12 +22,6 @@ import org.xu.remoting.dto.RpcResponse;
 @Slf4j
 public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
 
-    private final UnprocessedRequests unprocessedRequests;
-
-    public NettyRpcClientHandler() {
-        this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
-    }
-
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         try {
@@ -33,8 +32,14 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
                 // 如果是返回的数据
                 if (messageType == RpcConstants.RESPONSE_TYPE) {
                     RpcResponse<Object> rpcResponse = (RpcResponse<Object>) tmp.getData();
-                    // 将返回结果封装到CompletableFuture
-                    unprocessedRequests.complete(rpcResponse);
+                    // 按消息头中的请求id，将返回结果封装到CompletableFuture
+                    UnprocessedRequests.of(ctx.channel()).complete(tmp.getRequestId(), rpcResponse);
+                } else if (messageType == RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
+                    // 心跳响应，记录往返时间
+                    HeartbeatStats.of(ctx.channel()).pong(tmp.getRequestId());
+                } else if (messageType == RpcConstants.HANDSHAKE_RESPONSE_TYPE) {
+                    // 握手响应，之后的请求按方法id 发送
+                    MethodIdTable.of(ctx.channel()).update((RpcHandshake) tmp.getData());
                 }
             }
         } finally {
@@ -42,13 +47,42 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        // 连接建立后先握手，获取服务端的方法表
+        RpcMessage handshake = RpcMessage.builder()
+                .messageType(RpcConstants.HANDSHAKE_REQUEST_TYPE)
+                .codec(SerializationTypeEnum.KRYO.getCode())
+                .compress(CompressTypeEnum.NONE.getCode()).build();
+        ctx.writeAndFlush(handshake).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 连接断开，这个连接上未返回的请求不会再有响应，全部以异常结束
+        UnprocessedRequests.of(ctx.channel()).failAll(
+                new RpcException(RpcErrorMessageEnum.CONNECTION_CLOSED, String.valueOf(ctx.channel().remoteAddress())));
+        super.channelInactive(ctx);
+    }
+
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
         if (evt instanceof IdleStateEvent) {
             IdleState state = ((IdleStateEvent) evt).state();
             if (state == IdleState.WRITER_IDLE) {
-                log.info("write idle happen [{}]", ctx.channel().remoteAddress());
-                // 发送心跳请求
+                log.debug("write idle happen [{}]", ctx.channel().remoteAddress());
+                // 发送心跳请求，只有消息头，请求id 为心跳序号，服务端原样带回
+                RpcMessage ping = RpcMessage.builder()
+                        .messageType(RpcConstants.HEARTBEAT_REQUEST_TYPE)
+                        .codec(SerializationTypeEnum.KRYO.getCode())
+                        .compress(CompressTypeEnum.NONE.getCode())
+                        .requestId(HeartbeatStats.of(ctx.channel()).ping()).build();
+                ctx.writeAndFlush(ping).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            } else if (state == IdleState.READER_IDLE) {
+                // 连续几次心跳都没有响应，服务端已经不可用，关闭连接
+                log.warn("no heartbeat response from [{}], close the connection", ctx.channel().remoteAddress());
+                ctx.close();
             }
         } else {
             super.userEventTriggered(ctx, evt);
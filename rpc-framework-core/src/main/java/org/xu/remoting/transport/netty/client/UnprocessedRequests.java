@@ -1,27 +1,241 @@
 package org.xu.remoting.transport.netty.client;
 
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import lombok.extern.slf4j.Slf4j;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.RpcErrorMessageEnum;
+import org.xu.exception.RpcException;
+import org.xu.loadbalance.EndpointStats;
 import org.xu.remoting.dto.RpcResponse;
+import org.xu.utils.RpcConfigUtil;
+import org.xu.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
 
-import java.util.Map;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 保存服务端未返回的请求
+ * <p>
+ * 每个连接一份，挂在 channel 的属性上。请求id 由连接自己生成，写在消息头里，服务端原样带回，
+ * 所以消息体中不再需要字符串形式的请求id
+ * <p>
+ * 请求按请求id 分散到多个分片中，每个分片是一个以 int 为键的 map，各自加锁，发送线程和 IO 线程很少争用同一把锁。
+ * 每个请求在时间轮上登记一个超时任务，超时、连接断开时都会移除请求并以异常结束 future，未返回的请求不会一直占着内存
+ * <p>
+ * 请求的发出和结束同时记录到服务端地址的 {@link EndpointStats} 中，超时的请求按等待的时间计入响应时间，供负载均衡使用
  */
+@Slf4j
 public class UnprocessedRequests {
-    private static final Map<String, CompletableFuture<RpcResponse<Object>>> UNPROCESSED_RESPONSE_FUTURES = new ConcurrentHashMap<>();
+    private static final AttributeKey<UnprocessedRequests> ATTRIBUTE_KEY = AttributeKey.valueOf("unprocessedRequests");
+    private static final int SHARD_COUNT = 16; // 分片数，必须是 2 的幂
+    private static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 10_000;
+    private static final long REQUEST_TIMEOUT_MILLIS = RpcConfigUtil.getIntProperty(RpcConfigEnum.REQUEST_TIMEOUT, (int) DEFAULT_REQUEST_TIMEOUT_MILLIS);
+    // 所有连接共用一个时间轮，只有一个线程
+    private static final HashedWheelTimer TIMEOUT_TIMER = new HashedWheelTimer(
+            ThreadPoolFactoryUtil.createThreadFactory("rpc-request-timeout", true), 10, TimeUnit.MILLISECONDS);
+    private static final LongAdder TOTAL_IN_FLIGHT = new LongAdder(); // 所有连接上未返回的请求数
+    private static final LongAdder TOTAL_TIMEOUT = new LongAdder(); // 超时的请求总数
 
-    public void put(String requestId, CompletableFuture<RpcResponse<Object>> future) {
-        UNPROCESSED_RESPONSE_FUTURES.put(requestId, future);
+    @SuppressWarnings("unchecked")
+    private final IntObjectMap<PendingRequest>[] shards = new IntObjectMap[SHARD_COUNT];
+    private final AtomicInteger nextRequestId = new AtomicInteger(); // 下一个请求id，溢出后回绕，同一连接上同时未返回的请求不会多到重复
+    private final AtomicInteger inFlight = new AtomicInteger(); // 这个连接上未返回的请求数
+    private final EndpointStats endpointStats; // 服务端地址的调用统计，地址未知时为 null
+
+    public UnprocessedRequests(EndpointStats endpointStats) {
+        this.endpointStats = endpointStats;
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new IntObjectHashMap<>();
+        }
+    }
+
+    /**
+     * 获取 channel 对应的未处理请求，没有时创建
+     */
+    public static UnprocessedRequests of(Channel channel) {
+        UnprocessedRequests unprocessedRequests = channel.attr(ATTRIBUTE_KEY).get();
+        if (unprocessedRequests == null) {
+            SocketAddress remoteAddress = channel.remoteAddress();
+            UnprocessedRequests created = new UnprocessedRequests(remoteAddress instanceof InetSocketAddress
+                    ? EndpointStats.of((InetSocketAddress) remoteAddress) : null);
+            unprocessedRequests = channel.attr(ATTRIBUTE_KEY).setIfAbsent(created);
+            if (unprocessedRequests == null) {
+                unprocessedRequests = created;
+            }
+        }
+        return unprocessedRequests;
+    }
+
+    /**
+     * 保存 future，登记超时任务，并返回为它生成的请求id
+     */
+    public int put(CompletableFuture<RpcResponse<Object>> future) {
+        return put(future, REQUEST_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 保存 future，超时时间为 timeoutMillis，不大于 0 时不设置超时
+     */
+    public int put(CompletableFuture<RpcResponse<Object>> future, long timeoutMillis) {
+        int requestId = nextRequestId.getAndIncrement();
+        PendingRequest pendingRequest = new PendingRequest(future);
+        IntObjectMap<PendingRequest> shard = shard(requestId);
+        synchronized (shard) {
+            shard.put(requestId, pendingRequest);
+        }
+        inFlight.incrementAndGet();
+        TOTAL_IN_FLIGHT.increment();
+        if (endpointStats != null) {
+            endpointStats.begin();
+        }
+        if (timeoutMillis > 0) {
+            pendingRequest.timeout = TIMEOUT_TIMER.newTimeout(t -> expire(requestId), timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return requestId;
+    }
+
+    public void complete(int requestId, RpcResponse<Object> rpcResponse) { // 移除CompletableFuture，并且完成返回
+        PendingRequest pendingRequest = remove0(requestId);
+        if (null != pendingRequest) {
+            pendingRequest.cancelTimeout();
+            endRequest(pendingRequest, true);
+            pendingRequest.future.complete(rpcResponse);
+        } else {
+            // 请求已经超时或者已经被移除，迟到的响应直接丢弃
+            log.warn("discard response of unknown request id [{}]", requestId);
+        }
+    }
+
+    /**
+     * 发送失败时移除请求
+     */
+    public CompletableFuture<RpcResponse<Object>> remove(int requestId) {
+        PendingRequest pendingRequest = remove0(requestId);
+        if (pendingRequest == null) {
+            return null;
+        }
+        pendingRequest.cancelTimeout();
+        endRequest(pendingRequest, false);
+        return pendingRequest.future;
+    }
+
+    /**
+     * 连接断开时，以异常结束这个连接上所有未返回的请求
+     */
+    public void failAll(Throwable cause) {
+        List<PendingRequest> pendingRequests = new ArrayList<>();
+        for (IntObjectMap<PendingRequest> shard : shards) {
+            synchronized (shard) {
+                pendingRequests.addAll(shard.values());
+                shard.clear();
+            }
+        }
+        if (pendingRequests.isEmpty()) {
+            return;
+        }
+        inFlight.addAndGet(-pendingRequests.size());
+        TOTAL_IN_FLIGHT.add(-pendingRequests.size());
+        for (PendingRequest pendingRequest : pendingRequests) {
+            pendingRequest.cancelTimeout();
+            endRequest(pendingRequest, false);
+            pendingRequest.future.completeExceptionally(cause);
+        }
+        log.warn("[{}] unprocessed requests failed: {}", pendingRequests.size(), cause.getMessage());
     }
 
-    public void complete(RpcResponse<Object> rpcResponse) { // 移除CompletableFuture，并且完成返回
-        CompletableFuture<RpcResponse<Object>> future = UNPROCESSED_RESPONSE_FUTURES.remove(rpcResponse.getRequestId());
-        if (null != future) {
-            future.complete(rpcResponse);
+    /**
+     * 这个连接上未返回的请求数
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * 没有单独配置超时时间的请求使用的超时时间，即 rpc.request.timeout
+     */
+    public static long getDefaultTimeoutMillis() {
+        return REQUEST_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * 所有连接上未返回的请求数
+     */
+    public static long getTotalInFlightCount() {
+        return TOTAL_IN_FLIGHT.sum();
+    }
+
+    /**
+     * 超时的请求总数
+     */
+    public static long getTotalTimeoutCount() {
+        return TOTAL_TIMEOUT.sum();
+    }
+
+    private void expire(int requestId) {
+        PendingRequest pendingRequest = remove0(requestId);
+        if (pendingRequest != null) {
+            TOTAL_TIMEOUT.increment();
+            endRequest(pendingRequest, true);
+            pendingRequest.future.completeExceptionally(new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT, "requestId:" + requestId));
+        }
+    }
+
+    /**
+     * 记录请求结束，有结果（响应或者超时）时计入响应时间
+     */
+    private void endRequest(PendingRequest pendingRequest, boolean measured) {
+        if (endpointStats == null) {
+            return;
+        }
+        if (measured) {
+            endpointStats.end(System.nanoTime() - pendingRequest.startNanos);
         } else {
-            throw new IllegalStateException();
+            endpointStats.abort();
+        }
+    }
+
+    private PendingRequest remove0(int requestId) {
+        IntObjectMap<PendingRequest> shard = shard(requestId);
+        PendingRequest pendingRequest;
+        synchronized (shard) {
+            pendingRequest = shard.remove(requestId);
+        }
+        if (pendingRequest != null) {
+            inFlight.decrementAndGet();
+            TOTAL_IN_FLIGHT.decrement();
+        }
+        return pendingRequest;
+    }
+
+    private IntObjectMap<PendingRequest> shard(int requestId) {
+        return shards[requestId & (SHARD_COUNT - 1)];
+    }
+
+    private static final class PendingRequest {
+        private final CompletableFuture<RpcResponse<Object>> future;
+        private final long startNanos = System.nanoTime(); // 发出请求的时间
+        private volatile Timeout timeout; // 超时任务，请求完成时取消
+
+        private PendingRequest(CompletableFuture<RpcResponse<Object>> future) {
+            this.future = future;
+        }
+
+        private void cancelTimeout() {
+            Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
         }
     }
 }
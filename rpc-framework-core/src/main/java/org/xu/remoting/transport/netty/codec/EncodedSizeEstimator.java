@@ -0,0 +1,85 @@
+package org.xu.remoting.transport.netty.codec;
+
+import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.RpcMessage;
+import org.xu.remoting.dto.RpcRequest;
+import org.xu.remoting.dto.RpcResponse;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 估计消息编码后的大小，编码器据此一次分配好足够大的缓冲区，避免编码过程中反复扩容。
+ * 请求按 接口名 + 方法名 统计，其他消息按数据的类型统计，记录编码大小的滑动平均值
+ */
+public class EncodedSizeEstimator {
+
+    private static final int INITIAL_ESTIMATE = 256; // 还没有统计数据时的估计值
+    private static final int WEIGHT_SHIFT = 3; // 滑动平均中新样本的权重为 1/8
+
+    /**
+     * key: 接口名，value: (key: 方法名，value: 该方法请求的编码大小)
+     */
+    private final Map<String, Map<String, SizeAverage>> requestSizes = new ConcurrentHashMap<>();
+    private final ClassValue<SizeAverage> dataSizes = new ClassValue<>() { // 按数据类型统计，ClassValue 的查找比 Map 更快
+        @Override
+        protected SizeAverage computeValue(Class<?> type) {
+            return new SizeAverage();
+        }
+    };
+    private final LongAdder encodedCount = new LongAdder(); // 编码的消息数
+    private final LongAdder exceededCount = new LongAdder(); // 编码大小超过估计值（缓冲区需要扩容）的消息数
+
+    /**
+     * 估计消息编码后的大小，在平均值的基础上多留 1/4 的余量
+     */
+    public int estimate(RpcMessage msg) {
+        int average = sizeAverage(msg).value;
+        if (average == 0) { // 还没有统计数据
+            return INITIAL_ESTIMATE;
+        }
+        return Math.min(average + (average >> 2), RpcConstants.MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * 记录消息实际编码后的大小
+     *
+     * @param encodedSize   实际编码后的大小
+     * @param allocatedSize 编码前按估计值分配的大小
+     */
+    public void record(RpcMessage msg, int encodedSize, int allocatedSize) {
+        SizeAverage sizeAverage = sizeAverage(msg);
+        // 多个线程同时更新时可能丢失一次样本，对估计值影响不大，所以不加锁
+        int average = sizeAverage.value;
+        sizeAverage.value = average == 0 ? encodedSize : average + ((encodedSize - average) >> WEIGHT_SHIFT);
+        encodedCount.increment();
+        if (encodedSize > allocatedSize) {
+            exceededCount.increment();
+        }
+    }
+
+    public long getEncodedCount() {
+        return encodedCount.sum();
+    }
+
+    public long getExceededCount() {
+        return exceededCount.sum();
+    }
+
+    private SizeAverage sizeAverage(RpcMessage msg) {
+        Object data = msg.getData();
+        if (data instanceof RpcRequest rpcRequest) {
+            return requestSizes.computeIfAbsent(rpcRequest.getInterfaceName(), k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(rpcRequest.getMethodName(), k -> new SizeAverage());
+        }
+        if (data instanceof RpcResponse<?> rpcResponse && rpcResponse.getData() != null) {
+            return dataSizes.get(rpcResponse.getData().getClass());
+        }
+        return dataSizes.get(data == null ? RpcMessage.class : data.getClass());
+    }
+
+    private static final class SizeAverage {
+        private volatile int value; // 0 表示还没有样本
+    }
+}
@@ -1,12 +1,18 @@
 package org.xu.remoting.transport.netty.codec;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import lombok.extern.slf4j.Slf4j;
+import org.xu.compress.Compress;
+import org.xu.enums.CompressTypeEnum;
 import org.xu.enums.SerializationTypeEnum;
 import org.xu.extension.ExtensionLoader;
 import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.RpcCompactRequest;
+import org.xu.remoting.dto.LegacyRpcRequest;
+import org.xu.remoting.dto.RpcHandshake;
 import org.xu.remoting.dto.RpcMessage;
 import org.xu.remoting.dto.RpcRequest;
 import org.xu.remoting.dto.RpcResponse;
@@ -69,7 +75,7 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder{
             ByteBuf frame = (ByteBuf) decoded;
             if (frame.readableBytes() >= RpcConstants.TOTAL_LENGTH) { // 可读长度要大于 16B
                 try {
-                    return decodeFrame(frame);
+                    return decodeFrame(ctx.alloc(), frame);
                 } catch (Exception e) {
                     log.error("Decode frame error!", e);
                     throw e;
@@ -81,10 +87,13 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder{
         return decoded;
     }
 
-    private Object decodeFrame(ByteBuf in) {
+    /**
+     * 解码一个完整的帧（消息头 + 消息体），解压时从 alloc 分配缓冲区。不经过 netty 的传输（比如 socket 传输）也使用这个方法
+     */
+    public RpcMessage decodeFrame(ByteBufAllocator alloc, ByteBuf in) {
         // 检查魔法数和版本号
         checkMagicNumber(in);
-        checkVersion(in);
+        byte version = checkVersion(in);
         int fullLength = in.readInt();
         // 创建RpcMessage对象
         byte messageType = in.readByte();
@@ -92,32 +101,76 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder{
         byte compressType = in.readByte();
         int requestId = in.readInt();
         RpcMessage rpcMessage = RpcMessage.builder()
+                .version(version)
                 .messageType(messageType)
                 .codec(codecType)
                 .compress(compressType)
                 .requestId(requestId).build();
-        // 心跳检测数据, 后续补充
+        // 心跳只有消息头，不需要反序列化
+        if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE || messageType == RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
+            return rpcMessage;
+        }
         int bodyLength = fullLength - RpcConstants.HEAD_LENGTH;
+        if (version == RpcConstants.V1_VERSION) {
+            decodeV1Body(in, bodyLength, rpcMessage);
+            return rpcMessage;
+        }
         if (bodyLength > 0) {
-            byte[] bs = new byte[bodyLength];
-            in.readBytes(bs);
-            // 解压缩,后续补充
-
-            // 反序列化
-            String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
-            log.info("codec name: [{}]", codecName);
-            Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(codecName);
-            if (messageType == RpcConstants.REQUEST_TYPE) {
-                RpcRequest tmpValue = serializer.deserialize(bs, RpcRequest.class);
-                rpcMessage.setData(tmpValue);
-            } else {
-                RpcResponse tmpValue = serializer.deserialize(bs, RpcResponse.class);
-                rpcMessage.setData(tmpValue);
+            // 解压缩，消息体没有压缩时直接读取 frame
+            ByteBuf body = in;
+            if (compressType != CompressTypeEnum.NONE.getCode()) {
+                body = decompress(alloc, in, bodyLength, compressType);
+            }
+            try {
+                // 反序列化，直接读取消息体，不拷贝出 byte 数组
+                String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
+                log.debug("codec name: [{}]", codecName);
+                Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(codecName);
+                rpcMessage.setData(serializer.deserialize(body, body.readableBytes(), bodyClass(messageType)));
+            } finally {
+                if (body != in) {
+                    body.release();
+                }
             }
         }
         return rpcMessage;
     }
 
+    /**
+     * 解码 v1 的消息体：v1 的客户端只发送请求，压缩字段固定为 gzip 但消息体没有压缩。
+     * 消息体转换为当前版本的请求，字符串请求id 记在 RpcMessage 中，回复时带回
+     */
+    private void decodeV1Body(ByteBuf in, int bodyLength, RpcMessage rpcMessage) {
+        if (rpcMessage.getMessageType() != RpcConstants.REQUEST_TYPE) {
+            throw new IllegalArgumentException("Unsupported v1 message type: " + rpcMessage.getMessageType());
+        }
+        String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
+        Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(codecName);
+        LegacyRpcRequest legacyRpcRequest = serializer.deserialize(in, bodyLength, LegacyRpcRequest.class);
+        rpcMessage.setCompress(CompressTypeEnum.NONE.getCode());
+        rpcMessage.setLegacyRequestId(legacyRpcRequest.getRequestId());
+        rpcMessage.setData(legacyRpcRequest.toRpcRequest());
+    }
+
+    /**
+     * 解压 in 中长度为 bodyLength 的消息体，返回的 ByteBuf 需要调用方释放
+     */
+    private ByteBuf decompress(ByteBufAllocator alloc, ByteBuf in, int bodyLength, byte compressType) {
+        String compressName = CompressTypeEnum.getName(compressType);
+        if (compressName == null) {
+            throw new IllegalArgumentException("Unknown compress type: " + compressType);
+        }
+        Compress compress = ExtensionLoader.getExtensionLoader(Compress.class).getExtension(compressName);
+        ByteBuf body = alloc.buffer(bodyLength << 1);
+        try {
+            compress.decompress(in.readSlice(bodyLength), body);
+        } catch (RuntimeException e) {
+            body.release();
+            throw e;
+        }
+        return body;
+    }
+
     private void checkMagicNumber(ByteBuf in) {
         // 读取前4位魔法数，并进行比较
         int len = RpcConstants.MAGIC_NUMBER.length;
@@ -130,12 +183,29 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder{
         }
     }
 
-    private void checkVersion(ByteBuf in) {
-        // 读取版本号并进行比较
+    private byte checkVersion(ByteBuf in) {
+        // 读取版本号并进行比较，只接受当前版本和 v1，其他版本的消息体无法解码
         byte version = in.readByte();
-        if (version != RpcConstants.VERSION) {
+        if (version != RpcConstants.VERSION && version != RpcConstants.V1_VERSION) {
             throw new RuntimeException("version isn't compatible: " + version);
         }
+        return version;
+    }
+
+    /**
+     * 消息类型对应的消息体类型
+     */
+    private static Class<?> bodyClass(byte messageType) {
+        switch (messageType) {
+            case RpcConstants.REQUEST_TYPE:
+                return RpcRequest.class;
+            case RpcConstants.COMPACT_REQUEST_TYPE:
+                return RpcCompactRequest.class;
+            case RpcConstants.HANDSHAKE_RESPONSE_TYPE:
+                return RpcHandshake.class;
+            default:
+                return RpcResponse.class;
+        }
     }
 
 }
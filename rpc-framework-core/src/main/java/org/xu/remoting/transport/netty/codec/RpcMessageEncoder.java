@@ -1,16 +1,22 @@
 package org.xu.remoting.transport.netty.codec;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
+import org.xu.compress.Compress;
+import org.xu.enums.CompressTypeEnum;
+import org.xu.enums.RpcConfigEnum;
 import org.xu.enums.SerializationTypeEnum;
 import org.xu.extension.ExtensionLoader;
+import org.xu.factory.SingletonFactory;
 import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.LegacyRpcResponse;
 import org.xu.remoting.dto.RpcMessage;
+import org.xu.remoting.dto.RpcResponse;
 import org.xu.serialize.Serializer;
-
-import java.util.concurrent.atomic.AtomicInteger;
+import org.xu.utils.RpcConfigUtil;
 
 /**
  * 自定义协议编码器
@@ -28,47 +34,122 @@ import java.util.concurrent.atomic.AtomicInteger;
  * 1B compress（压缩类型） 1B codec（序列化类型）    4B  requestId（请求的Id）
  * body（object类型数据）
  * </pre>
- *
+ * version 按 RpcMessage 中的版本写，没有指定时写当前版本。回复 v1 的请求时按 v1 的格式写：
+ * 消息体为带字符串请求id 的 {@link LegacyRpcResponse}，不压缩，压缩字段和 v1 一样写 gzip
+ * <p>
+ * 消息体不小于 rpc.compress.threshold 时才按照 compress 指定的方式压缩，否则 compress 字段写为 NONE
+ * <p>
+ * 缓冲区从池化的直接内存中分配，大小按照 {@link EncodedSizeEstimator} 的估计值一次分配好，大多数消息编码时不需要扩容
  */
 @Slf4j
 public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
 
-    private static final AtomicInteger ATOMIC_INTEGER = new AtomicInteger(0);
+    private static final int DEFAULT_COMPRESS_THRESHOLD = 4 * 1024; // 默认只压缩不小于 4KB 的消息体
+    private static final int COMPRESS_THRESHOLD = RpcConfigUtil.getIntProperty(RpcConfigEnum.COMPRESS_THRESHOLD, DEFAULT_COMPRESS_THRESHOLD);
+    private static final int LENGTH_INDEX = RpcConstants.MAGIC_NUMBER.length + 1; // 消息总长在消息头中的位置
+    private static final int COMPRESS_INDEX = LENGTH_INDEX + 4 + 2; // 压缩类型在消息头中的位置
+
+    private final EncodedSizeEstimator sizeEstimator;
+
+    public RpcMessageEncoder() {
+        this.sizeEstimator = SingletonFactory.getInstance(EncodedSizeEstimator.class);
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, RpcMessage msg, boolean preferDirect) {
+        return ctx.alloc().directBuffer(sizeEstimator.estimate(msg));
+    }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, RpcMessage msg, ByteBuf out) {
+        encode(ctx.alloc(), msg, out);
+    }
+
+    /**
+     * 预估消息编码后的大小，用来分配 out
+     */
+    public int estimateSize(RpcMessage msg) {
+        return sizeEstimator.estimate(msg);
+    }
+
+    /**
+     * 把一条消息编码后写入 out，压缩时从 alloc 分配临时缓冲区。不经过 netty 的传输（比如 socket 传输）也使用这个方法
+     */
+    public void encode(ByteBufAllocator alloc, RpcMessage msg, ByteBuf out) {
         try {
+            int startIndex = out.writerIndex();
+            int allocatedSize = out.capacity() - startIndex;
+            int encodedSize = RpcConstants.HEAD_LENGTH; // 编码过程中需要的最大空间（压缩前的大小）
             out.writeBytes(RpcConstants.MAGIC_NUMBER);
-            out.writeByte(RpcConstants.VERSION);
-            // 游标向前移动，流出写总长的大小
-            out.writerIndex(out.writerIndex() + 4);
+            out.writeByte(msg.getVersion() == 0 ? RpcConstants.VERSION : msg.getVersion());
+            // 先占住写总长的位置，消息体写完后再回填
+            out.writeInt(0);
             byte messageType = msg.getMessageType();
             out.writeByte(messageType);
             out.writeByte(msg.getCodec());
-            out.writeByte(msg.getCompress()); // !
-            out.writeInt(ATOMIC_INTEGER.getAndIncrement());
-            // 创建总长度
-            byte[] bodyBytes = null;
-            int fullLength = RpcConstants.HEAD_LENGTH;
-            // 如果消息类型不是心跳检测，总长度=头长度+消息体长度
-            if (true) {
-                // 对象序列化
+            out.writeByte(msg.getCompress()); // 真正使用的压缩方式要等消息体写完才能确定，写完后再回填
+            out.writeInt(msg.getRequestId());
+            // 有消息体时，总长度=头长度+消息体长度；心跳、握手请求这类消息只有消息头，不做序列化
+            if (msg.getVersion() == RpcConstants.V1_VERSION) {
+                encodeV1Body(msg, out);
+                encodedSize = out.writerIndex() - startIndex;
+                out.setByte(startIndex + COMPRESS_INDEX, CompressTypeEnum.GZIP.getCode()); // v1 的对端不看压缩字段，和 v1 一样写 gzip
+            } else if (msg.getData() != null && messageType != RpcConstants.HEARTBEAT_REQUEST_TYPE
+                    && messageType != RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
+                // 对象序列化，直接写入 out，不生成中间的 byte 数组
                 String codecName = SerializationTypeEnum.getName(msg.getCodec());
-                log.info("codec name: [{}] ", codecName);
+                log.debug("codec name: [{}] ", codecName);
                 Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(codecName);
-                bodyBytes = serializer.serialize(msg.getData());
-                // 压缩，后续补充
-                fullLength += bodyBytes.length;
+                int bodyIndex = out.writerIndex();
+                serializer.serialize(msg.getData(), out);
+                encodedSize = out.writerIndex() - startIndex;
+                // 压缩，消息体太小时不压缩
+                byte compressType = compress(alloc, out, bodyIndex, msg.getCompress());
+                out.setByte(startIndex + COMPRESS_INDEX, compressType);
             }
-            if (bodyBytes != null) {
-                out.writeBytes(bodyBytes);
-            }
-            int writeIndex = out.writerIndex();
-            out.writerIndex(writeIndex - fullLength + RpcConstants.MAGIC_NUMBER.length + 1); // 恢复写游标
-            out.writeInt(fullLength);
-            out.writerIndex(writeIndex);
+            int fullLength = out.writerIndex() - startIndex;
+            out.setInt(startIndex + LENGTH_INDEX, fullLength);
+            sizeEstimator.record(msg, encodedSize, allocatedSize);
         } catch (Exception e) {
             log.error("Encode request error!", e);
         }
     }
+
+    /**
+     * 按 v1 的格式写响应的消息体，v1 的客户端按消息体中的字符串请求id 找到对应的请求
+     */
+    private void encodeV1Body(RpcMessage msg, ByteBuf out) {
+        if (msg.getMessageType() != RpcConstants.RESPONSE_TYPE) {
+            throw new IllegalArgumentException("Unsupported v1 message type: " + msg.getMessageType());
+        }
+        String codecName = SerializationTypeEnum.getName(msg.getCodec());
+        Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(codecName);
+        serializer.serialize(LegacyRpcResponse.of((RpcResponse<?>) msg.getData(), msg.getLegacyRequestId()), out);
+    }
+
+    /**
+     * 压缩 out 中从 bodyIndex 开始的消息体，并用压缩结果替换掉原来的消息体
+     *
+     * @return 实际使用的压缩方式。消息体小于阈值，或者压缩后没有变小时，不压缩，返回 NONE
+     */
+    private byte compress(ByteBufAllocator alloc, ByteBuf out, int bodyIndex, byte compressType) {
+        int bodyLength = out.writerIndex() - bodyIndex;
+        if (compressType == CompressTypeEnum.NONE.getCode() || bodyLength < COMPRESS_THRESHOLD) {
+            return CompressTypeEnum.NONE.getCode();
+        }
+        String compressName = CompressTypeEnum.getName(compressType);
+        Compress compress = ExtensionLoader.getExtensionLoader(Compress.class).getExtension(compressName);
+        ByteBuf compressed = alloc.directBuffer(bodyLength);
+        try {
+            compress.compress(out.slice(bodyIndex, bodyLength), compressed);
+            if (compressed.readableBytes() >= bodyLength) {
+                return CompressTypeEnum.NONE.getCode();
+            }
+            out.writerIndex(bodyIndex);
+            out.writeBytes(compressed);
+            return compressType;
+        } finally {
+            compressed.release();
+        }
+    }
 }
@@ -1,10 +1,9 @@
 package org.xu.remoting.transport.netty.server;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.timeout.IdleStateHandler;
@@ -13,26 +12,43 @@ import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
 import org.xu.config.RpcServiceConfig;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.ServerExecutionModeEnum;
 import org.xu.factory.SingletonFactory;
 import org.xu.provider.ServiceProvider;
 import org.xu.provider.impl.ZkServiceProviderImpl;
+import org.xu.remoting.transport.netty.FlushConsolidationHandler;
+import org.xu.remoting.transport.netty.NettyTransport;
 import org.xu.remoting.transport.netty.codec.RpcMessageDecoder;
 import org.xu.remoting.transport.netty.codec.RpcMessageEncoder;
 import org.xu.remoting.transport.socket.SocketRpcServer;
+import org.xu.utils.RpcConfigUtil;
 import org.xu.utils.RuntimeUtil;
 import org.xu.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Netty实现的RPC服务端
+ * <p>
+ * IO 实现和 socket 参数见 {@link NettyTransport}。使用 epoll 并且配置了 rpc.server.acceptors 大于 1 时，
+ * 用 SO_REUSEPORT 把同一端口绑定多次，每个监听 socket 在自己的接收线程上，连接很多、建立很频繁时接收新连接不会只靠一个线程
  */
 @Slf4j
 public class NettyRpcServer {
     public static final int PORT = SocketRpcServer.PORT;
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 15; // 关闭时最多等待的时间
 
     private final ServiceProvider serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private volatile List<Channel> serverChannels = List.of(); // 监听 socket，使用 SO_REUSEPORT 时有多个
+    private volatile EventLoopGroup bossGroup;
+    private volatile EventLoopGroup workerGroup;
 
     public void registerService(RpcServiceConfig rpcServiceConfig) {
         serviceProvider.publishService(rpcServiceConfig);
@@ -41,20 +57,42 @@ public class NettyRpcServer {
     @SneakyThrows // 注解帮助添加 try-catch
     public void start() {
         String host = InetAddress.getLocalHost().getHostAddress();
-        NioEventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        NioEventLoopGroup workerGroup = new NioEventLoopGroup();
+        NettyTransport transport = NettyTransport.fromConfig();
+        int acceptors = Math.max(1, RpcConfigUtil.getIntProperty(RpcConfigEnum.SERVER_ACCEPTORS, 1));
+        if (acceptors > 1 && !transport.supportsReusePort()) {
+            log.warn("[{}] transport does not support SO_REUSEPORT, bind only once", transport.getName());
+            acceptors = 1;
+        }
+        log.info("server transport: [{}], acceptors: [{}]", transport.getName(), acceptors);
+        // 每次绑定的监听 socket 依次注册到不同的接收线程上
+        bossGroup = transport.newEventLoopGroup(acceptors);
+        workerGroup = transport.newEventLoopGroup(0);
+        ServerExecutionModeEnum executionMode = ServerExecutionModeEnum.getMode(
+                RpcConfigUtil.getProperty(RpcConfigEnum.SERVER_EXECUTION_MODE, ServerExecutionModeEnum.EVENT_EXECUTOR.getName()));
         // 使用多线程处理事件
-        DefaultEventExecutorGroup serviceHandlerGroup = new DefaultEventExecutorGroup(
-                RuntimeUtil.cpus() * 2,
-                ThreadPoolFactoryUtil.createThreadFactory("service-handler-group", false));
+        DefaultEventExecutorGroup serviceHandlerGroup = null;
+        ExecutorService virtualThreadExecutor = null;
+        if (executionMode == ServerExecutionModeEnum.VIRTUAL_THREAD) {
+            // 每个请求一个虚拟线程，处理器本身在 IO 线程中执行，只把服务方法交给虚拟线程
+            virtualThreadExecutor = ThreadPoolFactoryUtil.createVirtualThreadExecutorIfAbsent("service-handler-virtual");
+        } else {
+            serviceHandlerGroup = new DefaultEventExecutorGroup(
+                    RuntimeUtil.cpus() * 2,
+                    ThreadPoolFactoryUtil.createThreadFactory("service-handler-group", false));
+        }
+        log.info("server execution mode: [{}]", executionMode.getName());
+        DefaultEventExecutorGroup finalServiceHandlerGroup = serviceHandlerGroup;
+        ExecutorService finalVirtualThreadExecutor = virtualThreadExecutor;
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannelClass())
                     // TCP默认开启了 Nagle 算法，该算法的作用是尽可能的发送大数据快，减少网络传输。TCP_NODELAY 参数的作用就是控制是否启用 Nagle 算法。
                     .childOption(ChannelOption.TCP_NODELAY, true)
                     // 是否开启 TCP 底层心跳机制
                     .childOption(ChannelOption.SO_KEEPALIVE, true)
+                    // 使用池化的内存分配器，编码器从中分配直接内存
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                     //表示系统用于临时存放已完成三次握手的请求的队列的最大长度,如果连接建立频繁，服务器处理创建新连接较慢，可以适当调大这个参数
                     .option(ChannelOption.SO_BACKLOG, 128)
                     .handler(new LoggingHandler(LogLevel.INFO))
@@ -63,26 +101,66 @@ public class NettyRpcServer {
                         @Override
                         protected void initChannel(SocketChannel ch) throws Exception {
                             ChannelPipeline p = ch.pipeline();
-                            // 30s内没有收到客户端请求的话就关闭链接
+                            // 开启合并 flush 时，放在最靠近 socket 的位置，读完一批请求后一起返回
+                            FlushConsolidationHandler flushConsolidationHandler = FlushConsolidationHandler.fromConfig();
+                            if (flushConsolidationHandler != null) {
+                                p.addLast(flushConsolidationHandler);
+                            }
+                            // 30s内没有收到客户端请求的话就关闭链接，客户端空闲时每5s发送一次心跳，正常的连接不会被关闭
                             p.addLast(new IdleStateHandler(30, 0, 0, TimeUnit.SECONDS));
                             p.addLast(new RpcMessageEncoder());
                             p.addLast(new RpcMessageDecoder());
-                            p.addLast(serviceHandlerGroup, new NettyRpcServerHandler());
+                            // 处理器在 IO 线程中做准入控制，只把服务方法交给执行器；每个连接固定使用线程组中的一个线程
+                            p.addLast(new NettyRpcServerHandler(finalVirtualThreadExecutor != null
+                                    ? finalVirtualThreadExecutor : finalServiceHandlerGroup.next()));
                         }
                     });
+            transport.configure(b, acceptors > 1);
             // 绑定端口，同步等待绑定成功
-            ChannelFuture f = b.bind(host, PORT).sync();
+            List<Channel> channels = new ArrayList<>(acceptors);
+            for (int i = 0; i < acceptors; i++) {
+                channels.add(b.bind(host, PORT).sync().channel());
+            }
+            serverChannels = List.copyOf(channels);
+            // 进程退出时先从注册中心注销，再关闭服务端
+            Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "rpc-server-shutdown"));
             // 等待服务端监听端口关闭
-            f.channel().closeFuture().sync();
+            for (Channel channel : channels) {
+                channel.closeFuture().sync();
+            }
         } catch (InterruptedException e) {
             log.error("occur exception when start server:", e);
         } finally {
-            log.error("shutdown bossGroup and workerGroup");
+            log.info("shutdown bossGroup and workerGroup");
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
-            serviceHandlerGroup.shutdownGracefully();
+            if (serviceHandlerGroup != null) {
+                serviceHandlerGroup.shutdownGracefully();
+            }
+            if (virtualThreadExecutor != null) {
+                virtualThreadExecutor.shutdown();
+            }
         }
 
     }
 
+    /**
+     * 关闭服务端：先从注册中心注销，客户端收到地址变化后不再发送新请求，
+     * 再停止接收连接，事件循环优雅关闭，已经收到的请求处理完后返回
+     */
+    public void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        serviceProvider.unpublishServices();
+        for (Channel channel : serverChannels) {
+            channel.close().syncUninterruptibly();
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully().awaitUninterruptibly(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
 }
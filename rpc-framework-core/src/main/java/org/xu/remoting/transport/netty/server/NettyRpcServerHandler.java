@@ -9,27 +9,55 @@ import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.xu.enums.CompressTypeEnum;
+import org.xu.enums.RpcConfigEnum;
 import org.xu.enums.RpcResponseCodeEnum;
-import org.xu.enums.SerializationTypeEnum;
 import org.xu.factory.SingletonFactory;
+import org.xu.provider.ServiceProvider;
+import org.xu.provider.impl.ZkServiceProviderImpl;
 import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.RpcHandshake;
 import org.xu.remoting.dto.RpcMessage;
-import org.xu.remoting.dto.RpcRequest;
 import org.xu.remoting.dto.RpcResponse;
+import org.xu.remoting.handler.AdmissionController;
 import org.xu.remoting.handler.RpcRequestHandler;
+import org.xu.utils.RpcConfigUtil;
+
+import java.util.concurrent.Executor;
 
 /**
  * 自定义的服务端通道处理器，用来处理客户端发送的消息
  * 如果继承自 SimpleChannelInboundHandler 的话就不要考虑 ByteBuf 的释放 ，{@link SimpleChannelInboundHandler} 内部的
  * channelRead 方法会替你释放 ByteBuf ，避免可能导致的内存泄露问题。
+ * <p>
+ * 处理器在 IO 线程中执行：请求先经过 {@link AdmissionController} 准入控制，超过上限的直接返回 OVERLOADED，
+ * 接收的请求交给执行器执行服务方法。连接的待写出数据超过高水位时暂停读取这个连接，写出到低水位以下后恢复，
+ * 客户端发得比读得快时请求积压在客户端和 TCP 缓冲区中，而不是服务端的内存中
+ * <p>
+ * 请求带着客户端的超时时间，从收到请求开始计算截止时间；在队列中等到截止时间还没有开始执行的请求直接丢弃，
+ * 客户端此时已经放弃了这个请求，不再执行也不再返回
  */
 @Slf4j
 public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
 
     private final RpcRequestHandler rpcRequestHandler;
+    private final ServiceProvider serviceProvider;
+    private final byte compressType; // 响应使用的压缩方式
+    private final Executor serviceExecutor; // 执行服务方法的执行器，为 null 时在当前线程执行
+    private final AdmissionController admissionController;
 
     public NettyRpcServerHandler() {
+        this(null);
+    }
+
+    /**
+     * @param serviceExecutor 执行服务方法的执行器，比如每个请求一个虚拟线程的执行器
+     */
+    public NettyRpcServerHandler(Executor serviceExecutor) {
+        this.serviceExecutor = serviceExecutor;
         this.rpcRequestHandler = SingletonFactory.getInstance(RpcRequestHandler.class);
+        this.serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
+        this.admissionController = SingletonFactory.getInstance(AdmissionController.class);
+        this.compressType = CompressTypeEnum.getCode(RpcConfigUtil.getProperty(RpcConfigEnum.COMPRESS_TYPE, CompressTypeEnum.GZIP.getName()));
     }
 
     @Override
@@ -37,27 +65,33 @@ public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
         try {
             if (msg instanceof RpcMessage) {
                 log.info("server receive msg: [{}] ", msg);
-                byte messageType = ((RpcMessage) msg).getMessageType();
-                RpcMessage rpcMessage = new RpcMessage();
-                rpcMessage.setCodec(SerializationTypeEnum.KRYO.getCode());
-                rpcMessage.setCompress(CompressTypeEnum.GZIP.getCode());
-                // 如果数据类型不是心跳检测
-                if (true) {
-                    RpcRequest rpcRequest = (RpcRequest) ((RpcMessage) msg).getData();
-                    // 执行目标方法
-                    Object result = rpcRequestHandler.handle(rpcRequest);
-                    log.info(String.format("server get result: %s", result.toString()));
-                    rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
-                    if (ctx.channel().isActive() && ctx.channel().isWritable()) {
-                        RpcResponse<Object> rpcResponse = RpcResponse.success(result, rpcRequest.getRequestId());
-                        rpcMessage.setData(rpcResponse);
+                RpcMessage request = (RpcMessage) msg;
+                byte messageType = request.getMessageType();
+                if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
+                    // 心跳请求直接在 IO 线程回复，只有消息头
+                    writeMessage(ctx, request, RpcConstants.HEARTBEAT_RESPONSE_TYPE, null);
+                } else if (messageType == RpcConstants.HANDSHAKE_REQUEST_TYPE) {
+                    // 握手，下发方法表，客户端之后按方法id 调用
+                    RpcHandshake rpcHandshake = new RpcHandshake(serviceProvider.getMethodIds());
+                    writeMessage(ctx, request, RpcConstants.HANDSHAKE_RESPONSE_TYPE, rpcHandshake);
+                } else if (messageType == RpcConstants.REQUEST_TYPE || messageType == RpcConstants.COMPACT_REQUEST_TYPE) {
+                    long deadlineNanos = RpcRequestHandler.deadlineOf(System.nanoTime(), RpcRequestHandler.timeoutOf(request.getData()));
+                    AdmissionController.Permit permit = null;
+                    if (admissionController.isEnabled()) {
+                        permit = admissionController.tryAcquire(rpcRequestHandler.getRpcServiceName(request.getData()));
+                        if (permit == null) {
+                            log.debug("server overloaded, reject [{}]", request.getData());
+                            writeResponse(ctx, request, RpcResponse.fail(RpcResponseCodeEnum.OVERLOADED));
+                            return;
+                        }
+                    }
+                    AdmissionController.Permit finalPermit = permit;
+                    if (serviceExecutor != null) {
+                        serviceExecutor.execute(() -> process(ctx, request, deadlineNanos, finalPermit));
                     } else {
-                        RpcResponse<Object> rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.FAIL);
-                        rpcMessage.setData(rpcResponse);
-                        log.error("not writable now, message dropped");
+                        process(ctx, request, deadlineNanos, finalPermit);
                     }
                 }
-                ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
             }
         } finally {
             // 确保ByteBuf已释放，否则可能会出现内存泄漏
@@ -65,6 +99,50 @@ public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // 不可写时暂停读取，不再接收新的请求
+        ctx.channel().config().setAutoRead(ctx.channel().isWritable());
+        super.channelWritabilityChanged(ctx);
+    }
+
+    /**
+     * 执行目标方法并返回结果，返回时归还准入控制的名额
+     */
+    private void process(ChannelHandlerContext ctx, RpcMessage request, long deadlineNanos, AdmissionController.Permit permit) {
+        if (permit != null) {
+            permit.started();
+        }
+        boolean executed = rpcRequestHandler.process(request.getData(), deadlineNanos,
+                rpcResponse -> writeResponse(ctx, request, rpcResponse, permit));
+        if (!executed && permit != null) {
+            permit.release();
+        }
+    }
+
+    private void writeResponse(ChannelHandlerContext ctx, RpcMessage request, RpcResponse<Object> rpcResponse, AdmissionController.Permit permit) {
+        if (permit != null) {
+            permit.release();
+        }
+        writeResponse(ctx, request, rpcResponse);
+    }
+
+    private void writeResponse(ChannelHandlerContext ctx, RpcMessage request, RpcResponse<Object> rpcResponse) {
+        writeMessage(ctx, request, RpcConstants.RESPONSE_TYPE, rpcResponse);
+    }
+
+    private void writeMessage(ChannelHandlerContext ctx, RpcMessage request, byte messageType, Object data) {
+        RpcMessage rpcMessage = new RpcMessage();
+        rpcMessage.setVersion(request.getVersion()); // 按请求的版本回复，老客户端只认识自己的版本
+        rpcMessage.setLegacyRequestId(request.getLegacyRequestId());
+        rpcMessage.setCodec(request.getCodec()); // 按请求的序列化方式回复
+        rpcMessage.setCompress(data == null ? CompressTypeEnum.NONE.getCode() : compressType);
+        rpcMessage.setRequestId(request.getRequestId()); // 响应带回请求的id
+        rpcMessage.setMessageType(messageType);
+        rpcMessage.setData(data);
+        ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
+
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception { // 监听空闲事件
         if (evt instanceof IdleStateEvent) { // 如果是空闲事件
@@ -0,0 +1,105 @@
+package org.xu.remoting.transport.socket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.RpcMessage;
+import org.xu.remoting.transport.netty.codec.RpcMessageDecoder;
+import org.xu.remoting.transport.netty.codec.RpcMessageEncoder;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * socket 上的一个长连接，按和 netty 传输相同的协议读写消息：16 字节的消息头 + 经过 Serializer、Compress 处理的消息体，
+ * 编解码直接复用 netty 传输的 {@link RpcMessageEncoder}、{@link RpcMessageDecoder}，两种传输的客户端和服务端可以互相连接
+ * <p>
+ * 写消息加锁，多个线程可以同时在一个连接上发送；读消息只在一个线程中进行。
+ * 锁用 ReentrantLock 而不是 synchronized，在虚拟线程中阻塞写 socket 时不会占住载体线程
+ */
+final class SocketConnection implements Closeable {
+    private static final ByteBufAllocator ALLOCATOR = PooledByteBufAllocator.DEFAULT;
+    private static final int LENGTH_FIELD_OFFSET = RpcConstants.MAGIC_NUMBER.length + 1; // 消息总长在消息头中的位置
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final RpcMessageEncoder encoder = new RpcMessageEncoder();
+    private final RpcMessageDecoder decoder = new RpcMessageDecoder();
+    private final byte[] head = new byte[LENGTH_FIELD_OFFSET + 4]; // 读消息时暂存消息头中消息总长及之前的部分
+
+    SocketConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        this.out = socket.getOutputStream();
+    }
+
+    /**
+     * 编码并发送一条消息，整条消息一次写入 socket
+     */
+    void write(RpcMessage rpcMessage) throws IOException {
+        ByteBuf buf = ALLOCATOR.heapBuffer(encoder.estimateSize(rpcMessage));
+        try {
+            encoder.encode(ALLOCATOR, rpcMessage, buf);
+            writeLock.lock();
+            try {
+                buf.readBytes(out, buf.readableBytes());
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * 阻塞读取下一条消息，连接关闭时抛出 {@link EOFException}
+     */
+    RpcMessage read() throws IOException {
+        in.readFully(head);
+        int fullLength = (head[LENGTH_FIELD_OFFSET] & 0xff) << 24 | (head[LENGTH_FIELD_OFFSET + 1] & 0xff) << 16
+                | (head[LENGTH_FIELD_OFFSET + 2] & 0xff) << 8 | (head[LENGTH_FIELD_OFFSET + 3] & 0xff);
+        if (fullLength < RpcConstants.HEAD_LENGTH || fullLength > RpcConstants.MAX_FRAME_LENGTH) {
+            throw new IOException("invalid frame length: " + fullLength);
+        }
+        ByteBuf frame = ALLOCATOR.heapBuffer(fullLength);
+        try {
+            frame.writeBytes(head);
+            while (frame.isWritable()) {
+                if (frame.writeBytes(in, frame.writableBytes()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            return decoder.decodeFrame(ALLOCATOR, frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    SocketAddress getRemoteAddress() {
+        return socket.getRemoteSocketAddress();
+    }
+
+    boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 关闭时的异常不影响结果
+        }
+    }
+}
@@ -1,47 +1,246 @@
 package org.xu.remoting.transport.socket;
 
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.xu.enums.CompressTypeEnum;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.RpcErrorMessageEnum;
+import org.xu.enums.SerializationTypeEnum;
 import org.xu.enums.ServiceDiscoveryEnum;
 import org.xu.exception.RpcException;
 import org.xu.extension.ExtensionLoader;
+import org.xu.loadbalance.EndpointStats;
 import org.xu.registry.ServiceDiscovery;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.registry.ServiceEndpointListener;
+import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.RpcMessage;
 import org.xu.remoting.dto.RpcRequest;
+import org.xu.remoting.dto.RpcResponse;
 import org.xu.remoting.transport.RpcRequestTransport;
+import org.xu.remoting.transport.netty.client.UnprocessedRequests;
+import org.xu.utils.RpcConfigUtil;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * socket实现的rpc客户端
+ * <p>
+ * 每个服务端地址一个长连接，协议和 netty 传输相同（见 {@link SocketConnection}）。请求由连接分配请求id，
+ * 多个线程可以同时在一个连接上发送请求，不必等前一个请求返回；每个连接一个虚拟线程读取响应，按请求id 完成对应的 future。
+ * 未返回的请求、超时和调用统计复用 netty 客户端的 {@link UnprocessedRequests}
+ * <p>
+ * 心跳和 netty 客户端相同：5 秒没有发送数据时发送心跳，服务端不会因为连接空闲而关闭连接；15 秒没有收到任何数据时关闭连接
  */
-@AllArgsConstructor
 @Slf4j
 public class SocketRpcClient implements RpcRequestTransport {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000; // 和 netty 客户端的连接超时时间相同
+    private static final long HEARTBEAT_INTERVAL_MILLIS = 5000; // 多久没有发送数据时发送心跳
+    private static final int READ_IDLE_TIMEOUT_MILLIS = 15_000; // 多久没有收到数据（包括心跳响应）时关闭连接
 
     private final ServiceDiscovery serviceDiscovery;
+    private final byte compressType; // 请求使用的压缩方式
+    // 每个地址一个连接，连接建立前先放入 future，同时发送的请求等待同一个连接，不会各自建立连接
+    private final Map<InetSocketAddress, CompletableFuture<Connection>> connections = new ConcurrentHashMap<>();
+    private final ServiceEndpointListener serviceEndpointListener;
 
     public SocketRpcClient() {
-        serviceDiscovery = ExtensionLoader.getExtensionLoader(ServiceDiscovery.class).getExtension(ServiceDiscoveryEnum.ZK.getName());
+        this(ExtensionLoader.getExtensionLoader(ServiceDiscovery.class).getExtension(
+                RpcConfigUtil.getProperty(RpcConfigEnum.REGISTRY, ServiceDiscoveryEnum.ZK.getName())));
     }
 
+    public SocketRpcClient(ServiceDiscovery serviceDiscovery) {
+        this.serviceDiscovery = serviceDiscovery;
+        this.compressType = CompressTypeEnum.getCode(RpcConfigUtil.getProperty(RpcConfigEnum.COMPRESS_TYPE, CompressTypeEnum.GZIP.getName()));
+        // 下线的地址关闭连接
+        this.serviceEndpointListener = new ServiceEndpointListener() {
+            @Override
+            public void endpointsAdded(List<ServiceEndpoint> added) {
+            }
+
+            @Override
+            public void endpointsRemoved(List<ServiceEndpoint> removed) {
+                for (ServiceEndpoint serviceEndpoint : removed) {
+                    CompletableFuture<Connection> connectionFuture = connections.remove(serviceEndpoint.getInetSocketAddress());
+                    if (connectionFuture != null) {
+                        connectionFuture.thenAccept(Connection::close);
+                    }
+                    EndpointStats.remove(serviceEndpoint.getAddress());
+                }
+            }
+        };
+        serviceDiscovery.addServiceEndpointListener(serviceEndpointListener);
+    }
+
+    /**
+     * 发送请求，返回的 future 在收到响应时完成，不阻塞调用线程等待响应
+     */
     @Override
     public Object sendRpcRequest(RpcRequest rpcRequest) {
         // 通过服务发现获取地址
         InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest);
-        try (Socket socket = new Socket()){
-            socket.connect(inetSocketAddress);
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
-            objectOutputStream.writeObject(rpcRequest);
-            ObjectInputStream objectInputStream = new ObjectInputStream(socket.getInputStream());
-            return objectInputStream.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            throw new RpcException("调用服务失败", e);
+        Connection connection = getConnection(inetSocketAddress);
+        CompletableFuture<RpcResponse<Object>> resultFuture = new CompletableFuture<>();
+        connection.send(rpcRequest, resultFuture);
+        return resultFuture;
+    }
+
+    public void close() {
+        serviceDiscovery.removeServiceEndpointListener(serviceEndpointListener);
+        connections.values().forEach(connectionFuture -> connectionFuture.thenAccept(Connection::close));
+        connections.clear();
+    }
+
+    /**
+     * 获取到 inetSocketAddress 的连接，没有连接或连接已经关闭时建立新的连接。
+     * 连接在 map 之外建立：放入 future 成功的线程负责连接，放入失败的线程丢弃自己的 future，等待已有的连接
+     */
+    private Connection getConnection(InetSocketAddress inetSocketAddress) {
+        while (true) {
+            CompletableFuture<Connection> connectionFuture = connections.get(inetSocketAddress);
+            if (connectionFuture == null) {
+                CompletableFuture<Connection> created = new CompletableFuture<>();
+                connectionFuture = connections.putIfAbsent(inetSocketAddress, created);
+                if (connectionFuture == null) {
+                    connectionFuture = created;
+                    try {
+                        created.complete(connect(inetSocketAddress));
+                    } catch (IOException e) {
+                        // 连接失败，移除后下一个请求重新连接
+                        connections.remove(inetSocketAddress, created);
+                        created.completeExceptionally(e);
+                    }
+                }
+            }
+            Connection connection;
+            try {
+                connection = connectionFuture.join();
+            } catch (CompletionException e) {
+                throw new RpcException(RpcErrorMessageEnum.CLIENT_CONNECT_SERVER_FAILURE, inetSocketAddress.toString(), e.getCause());
+            }
+            if (!connection.connection.isClosed()) {
+                return connection;
+            }
+            connections.remove(inetSocketAddress, connectionFuture);
+        }
+    }
+
+    private Connection connect(InetSocketAddress inetSocketAddress) throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        socket.connect(inetSocketAddress, CONNECT_TIMEOUT_MILLIS);
+        socket.setSoTimeout(READ_IDLE_TIMEOUT_MILLIS);
+        log.info("The client has connected [{}] successful!", inetSocketAddress);
+        Connection connection = new Connection(inetSocketAddress, new SocketConnection(socket));
+        Thread.ofVirtual().name("socket-client-reader-" + inetSocketAddress).start(connection::readLoop);
+        Thread.ofVirtual().name("socket-client-heartbeat-" + inetSocketAddress).start(connection::heartbeatLoop);
+        return connection;
+    }
+
+    private final class Connection {
+        private final InetSocketAddress address;
+        private final SocketConnection connection;
+        private final UnprocessedRequests unprocessedRequests;
+        private final AtomicInteger heartbeatSequence = new AtomicInteger(); // 心跳请求id，服务端原样带回
+        private volatile long lastWriteNanos = System.nanoTime(); // 最后一次发送数据的时间
+
+        private Connection(InetSocketAddress address, SocketConnection connection) {
+            this.address = address;
+            this.connection = connection;
+            this.unprocessedRequests = new UnprocessedRequests(EndpointStats.of(address));
+        }
+
+        private void send(RpcRequest rpcRequest, CompletableFuture<RpcResponse<Object>> resultFuture) {
+            int requestId = rpcRequest.getTimeout() > 0
+                    ? unprocessedRequests.put(resultFuture, rpcRequest.getTimeout()) : unprocessedRequests.put(resultFuture);
+            RpcMessage rpcMessage = RpcMessage.builder()
+                    .messageType(RpcConstants.REQUEST_TYPE)
+                    .codec(rpcRequest.getCodec())
+                    .compress(compressType)
+                    .requestId(requestId)
+                    .data(rpcRequest).build();
+            try {
+                write(rpcMessage);
+            } catch (IOException e) {
+                log.error("Send failed:", e);
+                CompletableFuture<RpcResponse<Object>> future = unprocessedRequests.remove(requestId);
+                close();
+                if (future != null) {
+                    future.completeExceptionally(new RpcException(RpcErrorMessageEnum.CONNECTION_CLOSED, address.toString(), e));
+                }
+            }
+        }
+
+        private void write(RpcMessage rpcMessage) throws IOException {
+            connection.write(rpcMessage);
+            lastWriteNanos = System.nanoTime();
+        }
+
+        /**
+         * 定时检查，一段时间没有发送数据时发送心跳，直到连接断开
+         */
+        private void heartbeatLoop() {
+            long intervalNanos = TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_INTERVAL_MILLIS);
+            try {
+                while (!connection.isClosed()) {
+                    long idleNanos = System.nanoTime() - lastWriteNanos;
+                    if (idleNanos < intervalNanos) {
+                        TimeUnit.NANOSECONDS.sleep(intervalNanos - idleNanos);
+                        continue;
+                    }
+                    // 只有消息头的心跳请求
+                    write(RpcMessage.builder()
+                            .messageType(RpcConstants.HEARTBEAT_REQUEST_TYPE)
+                            .codec(SerializationTypeEnum.KRYO.getCode())
+                            .compress(CompressTypeEnum.NONE.getCode())
+                            .requestId(heartbeatSequence.incrementAndGet()).build());
+                }
+            } catch (IOException e) {
+                log.warn("send heartbeat to [{}] failed: {}", address, e.toString());
+                close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * 读取响应，直到连接断开。一段时间没有收到任何数据时读取超时，关闭连接
+         */
+        @SuppressWarnings("unchecked")
+        private void readLoop() {
+            try {
+                while (true) {
+                    RpcMessage rpcMessage = connection.read();
+                    if (rpcMessage.getMessageType() == RpcConstants.RESPONSE_TYPE) {
+                        unprocessedRequests.complete(rpcMessage.getRequestId(), (RpcResponse<Object>) rpcMessage.getData());
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!connection.isClosed()) {
+                    log.warn("connection to [{}] broken: {}", address, e.toString());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            CompletableFuture<Connection> connectionFuture = connections.get(address);
+            if (connectionFuture != null && connectionFuture.getNow(null) == this) {
+                connections.remove(address, connectionFuture);
+            }
+            connection.close();
+            // 连接断开，这个连接上未返回的请求不会再有响应，全部以异常结束
+            unprocessedRequests.failAll(new RpcException(RpcErrorMessageEnum.CONNECTION_CLOSED, address.toString()));
         }
     }
 }
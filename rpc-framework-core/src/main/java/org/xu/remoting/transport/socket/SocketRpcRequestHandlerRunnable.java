@@ -1,46 +1,127 @@
 package org.xu.remoting.transport.socket;
 
 import lombok.extern.slf4j.Slf4j;
-import org.xu.exception.RpcException;
+import org.xu.enums.CompressTypeEnum;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.RpcResponseCodeEnum;
 import org.xu.factory.SingletonFactory;
 import org.xu.provider.ServiceProvider;
-import org.xu.remoting.dto.RpcRequest;
+import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.RpcHandshake;
+import org.xu.remoting.dto.RpcMessage;
 import org.xu.remoting.dto.RpcResponse;
+import org.xu.remoting.handler.AdmissionController;
 import org.xu.remoting.handler.RpcRequestHandler;
+import org.xu.utils.RpcConfigUtil;
+import org.xu.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.Socket;
+import java.util.concurrent.Executor;
 
 /**
- * socket 服务端线程池
+ * socket 服务端一个连接的处理循环，在虚拟线程中运行
+ * <p>
+ * 连接上不断读取请求，每个请求交给虚拟线程执行，执行完按请求id 写回响应，同一个连接上的多个请求可以同时执行、乱序返回。
+ * 心跳、握手、准入控制和截止时间的处理和 netty 服务端相同
  */
 @Slf4j
-public class SocketRpcRequestHandlerRunnable implements Runnable{
+public class SocketRpcRequestHandlerRunnable implements Runnable {
 
-    private final Socket socket;
+    private final SocketConnection connection;
+    private final ServiceProvider serviceProvider;
     private final RpcRequestHandler rpcRequestHandler;
+    private final AdmissionController admissionController;
+    private final Executor serviceExecutor; // 执行服务方法的线程
+    private final byte compressType; // 响应使用的压缩方式
 
-    public SocketRpcRequestHandlerRunnable(Socket socket, ServiceProvider serviceProvider) {
-        this.socket = socket;
+    public SocketRpcRequestHandlerRunnable(Socket socket, ServiceProvider serviceProvider) throws IOException {
+        this(socket, serviceProvider, ThreadPoolFactoryUtil.createVirtualThreadExecutorIfAbsent("socket-server-request"));
+    }
+
+    public SocketRpcRequestHandlerRunnable(Socket socket, ServiceProvider serviceProvider, Executor serviceExecutor) throws IOException {
+        this.connection = new SocketConnection(socket);
+        this.serviceProvider = serviceProvider;
         this.rpcRequestHandler = SingletonFactory.getInstance(RpcRequestHandler.class);
+        this.admissionController = SingletonFactory.getInstance(AdmissionController.class);
+        this.serviceExecutor = serviceExecutor;
+        this.compressType = CompressTypeEnum.getCode(RpcConfigUtil.getProperty(RpcConfigEnum.COMPRESS_TYPE, CompressTypeEnum.GZIP.getName()));
     }
 
     @Override
     public void run() {
-        log.info("server handle message from client by thread: [{}]", Thread.currentThread().getName());
-        try (ObjectInputStream objectInputStream = new ObjectInputStream(socket.getInputStream());
-             ObjectOutputStream objectOutputStream = new ObjectOutputStream(socket.getOutputStream())) {
-            RpcRequest rpcRequest = (RpcRequest) objectInputStream.readObject();
-            // 反射调用方法
-            Object result = rpcRequestHandler.handle(rpcRequest);
-            objectOutputStream.writeObject(RpcResponse.success(result, rpcRequest.getRequestId()));
-            objectOutputStream.flush();
-        } catch (ClassNotFoundException | IOException e) {
-            log.error("occur exception:", e);
+        log.info("server handle connection [{}] by thread: [{}]", connection.getRemoteAddress(), Thread.currentThread());
+        try {
+            while (true) {
+                RpcMessage request = connection.read();
+                byte messageType = request.getMessageType();
+                if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
+                    writeMessage(request, RpcConstants.HEARTBEAT_RESPONSE_TYPE, null);
+                } else if (messageType == RpcConstants.HANDSHAKE_REQUEST_TYPE) {
+                    // 握手，下发方法表，客户端之后按方法id 调用
+                    writeMessage(request, RpcConstants.HANDSHAKE_RESPONSE_TYPE, new RpcHandshake(serviceProvider.getMethodIds()));
+                } else if (messageType == RpcConstants.REQUEST_TYPE || messageType == RpcConstants.COMPACT_REQUEST_TYPE) {
+                    dispatch(request);
+                }
+            }
+        } catch (EOFException e) {
+            log.info("client [{}] disconnected", connection.getRemoteAddress());
+        } catch (IOException | RuntimeException e) {
+            if (!connection.isClosed()) {
+                log.error("occur exception on connection [{}]:", connection.getRemoteAddress(), e);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void dispatch(RpcMessage request) {
+        long deadlineNanos = RpcRequestHandler.deadlineOf(System.nanoTime(), RpcRequestHandler.timeoutOf(request.getData()));
+        AdmissionController.Permit permit = null;
+        if (admissionController.isEnabled()) {
+            permit = admissionController.tryAcquire(rpcRequestHandler.getRpcServiceName(request.getData()));
+            if (permit == null) {
+                log.debug("server overloaded, reject [{}]", request.getData());
+                writeResponse(request, RpcResponse.fail(RpcResponseCodeEnum.OVERLOADED), null);
+                return;
+            }
+        }
+        AdmissionController.Permit finalPermit = permit;
+        serviceExecutor.execute(() -> {
+            if (finalPermit != null) {
+                finalPermit.started();
+            }
+            boolean executed = rpcRequestHandler.process(request.getData(), deadlineNanos,
+                    rpcResponse -> writeResponse(request, rpcResponse, finalPermit));
+            if (!executed && finalPermit != null) {
+                finalPermit.release();
+            }
+        });
+    }
+
+    private void writeResponse(RpcMessage request, RpcResponse<Object> rpcResponse, AdmissionController.Permit permit) {
+        if (permit != null) {
+            permit.release();
+        }
+        writeMessage(request, RpcConstants.RESPONSE_TYPE, rpcResponse);
+    }
+
+    private void writeMessage(RpcMessage request, byte messageType, Object data) {
+        RpcMessage rpcMessage = new RpcMessage();
+        rpcMessage.setVersion(request.getVersion()); // 按请求的版本回复，老客户端只认识自己的版本
+        rpcMessage.setLegacyRequestId(request.getLegacyRequestId());
+        rpcMessage.setCodec(request.getCodec()); // 按请求的序列化方式回复
+        rpcMessage.setCompress(data == null ? CompressTypeEnum.NONE.getCode() : compressType);
+        rpcMessage.setRequestId(request.getRequestId()); // 响应带回请求的id
+        rpcMessage.setMessageType(messageType);
+        rpcMessage.setData(data);
+        try {
+            connection.write(rpcMessage);
+        } catch (IOException e) {
+            // 写失败说明连接已经断开，关闭后读循环随之结束
+            log.error("write response to [{}] failed: {}", connection.getRemoteAddress(), e.toString());
+            connection.close();
         }
     }
 }
@@ -5,15 +5,9 @@ import org.xu.config.RpcServiceConfig;
 import org.xu.factory.SingletonFactory;
 import org.xu.provider.ServiceProvider;
 import org.xu.provider.impl.ZkServiceProviderImpl;
-import org.xu.remoting.dto.RpcRequest;
-import org.xu.remoting.dto.RpcResponse;
 import org.xu.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
@@ -22,17 +16,20 @@ import java.util.concurrent.ExecutorService;
 
 /**
  * socket 实现的 RPC 服务端
+ * <p>
+ * 每个连接一个虚拟线程读取请求，请求再交给虚拟线程执行（见 {@link SocketRpcRequestHandlerRunnable}），
+ * 阻塞式的读写不会占住平台线程，连接数和并发请求数不受线程池大小限制
  */
 @Slf4j
 public class SocketRpcServer {
     public static final int PORT = 9998;
 
-    private final ExecutorService threadPool;
+    private final ExecutorService connectionExecutor; // 运行每个连接的读循环
     private final ServiceProvider serviceProvider;
 
 
     public SocketRpcServer() {
-        threadPool = ThreadPoolFactoryUtil.createCustomThreadPoolIfAbsent("socket-server-rpc-pool");
+        connectionExecutor = ThreadPoolFactoryUtil.createVirtualThreadExecutorIfAbsent("socket-server-connection");
         serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
     }
 
@@ -44,14 +41,31 @@ public class SocketRpcServer {
         try (ServerSocket server = new ServerSocket()) {
             String host = InetAddress.getLocalHost().getHostAddress();
             server.bind(new InetSocketAddress(host, PORT));
+            // 进程退出时从注册中心注销
+            Runtime.getRuntime().addShutdownHook(new Thread(serviceProvider::unpublishServices, "rpc-server-shutdown"));
             Socket socket;
             while ((socket = server.accept()) != null) {
                 log.info("client connected [{}]", socket.getInetAddress());
-                threadPool.execute(new SocketRpcRequestHandlerRunnable(socket, serviceProvider));
+                try {
+                    socket.setTcpNoDelay(true);
+                    connectionExecutor.execute(new SocketRpcRequestHandlerRunnable(socket, serviceProvider));
+                } catch (IOException e) {
+                    // 只影响这一个连接，关闭后继续接收其他连接
+                    log.error("set up connection [{}] failed:", socket.getRemoteSocketAddress(), e);
+                    closeQuietly(socket);
+                }
             }
-            threadPool.shutdown();
+            connectionExecutor.shutdown();
         } catch (IOException e) {
             log.error("occur IOException:", e);
         }
     }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 连接已经不可用
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package org.xu.serialize;
 
+import io.netty.buffer.ByteBuf;
 import org.xu.extension.SPI;
 
 /**
@@ -16,4 +17,22 @@ public interface Serializer {
      * 反序列化
      */
     <T> T deserialize(byte[] bytes, Class<T> clazz);
+
+    /**
+     * 序列化，直接写入 out 的可写区域，写完后 out 的 writerIndex 后移。
+     * 默认实现退化为 byte 数组再拷贝，支持流式写入的实现应该覆盖这个方法
+     */
+    default void serialize(Object obj, ByteBuf out) {
+        out.writeBytes(serialize(obj));
+    }
+
+    /**
+     * 反序列化，直接从 in 的 readerIndex 开始读取 length 个字节，读完后 in 的 readerIndex 后移。
+     * 默认实现退化为先拷贝到 byte 数组，支持流式读取的实现应该覆盖这个方法
+     */
+    default <T> T deserialize(ByteBuf in, int length, Class<T> clazz) {
+        byte[] bytes = new byte[length];
+        in.readBytes(bytes);
+        return deserialize(bytes, clazz);
+    }
 }
@@ -0,0 +1,138 @@
+package org.xu.serialize.hessian;
+
+import com.caucho.hessian.io.AbstractSerializerFactory;
+import com.caucho.hessian.io.CollectionSerializer;
+import com.caucho.hessian.io.Deserializer;
+import com.caucho.hessian.io.Hessian2Input;
+import com.caucho.hessian.io.Hessian2Output;
+import com.caucho.hessian.io.MapSerializer;
+import com.caucho.hessian.io.SerializerFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.xu.exception.SerializeException;
+import org.xu.serialize.Serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Hessian序列化
+ * <p>
+ * Hessian 2 是跨语言的自描述格式，不需要事先约定 schema，其他语言的 Hessian 实现也可以读写。
+ * <p>
+ * JDK 的不可变集合（List.of、Map.of 等）按普通的 list、map 写出，反序列化为 ArrayList、HashMap
+ */
+@Slf4j
+public class HessianSerializer implements Serializer {
+
+    /**
+     * 和 Kryo 不要求注册类一样，不要求参数、返回值实现 Serializable
+     */
+    private static final SerializerFactory SERIALIZER_FACTORY = new SerializerFactory();
+
+    static {
+        SERIALIZER_FACTORY.setAllowNonSerializable(true);
+        // 不可变集合的 writeReplace 会换成 JDK 内部的类，它的字段在 JDK 17 以上不能反射访问，这里直接按集合写出
+        SERIALIZER_FACTORY.addFactory(new AbstractSerializerFactory() {
+            @Override
+            @SuppressWarnings("rawtypes") // 覆盖的方法签名使用原始类型
+            public com.caucho.hessian.io.Serializer getSerializer(Class cl) {
+                if (!cl.getName().startsWith("java.util.ImmutableCollections$")) {
+                    return null;
+                }
+                if (Collection.class.isAssignableFrom(cl)) {
+                    CollectionSerializer serializer = new CollectionSerializer();
+                    serializer.setSendJavaType(false);
+                    return serializer;
+                }
+                if (Map.class.isAssignableFrom(cl)) {
+                    MapSerializer serializer = new MapSerializer();
+                    serializer.setSendJavaType(false);
+                    return serializer;
+                }
+                return null;
+            }
+
+            @Override
+            @SuppressWarnings("rawtypes") // 覆盖的方法签名使用原始类型
+            public Deserializer getDeserializer(Class cl) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Hessian2Output/Hessian2Input 自带缓冲区，每个线程复用一个，每次使用前 init 到新的流上
+     */
+    private final ThreadLocal<Hessian2Output> outputThreadLocal = ThreadLocal.withInitial(() -> {
+        Hessian2Output output = new Hessian2Output();
+        output.setSerializerFactory(SERIALIZER_FACTORY);
+        return output;
+    });
+    private final ThreadLocal<Hessian2Input> inputThreadLocal = ThreadLocal.withInitial(() -> {
+        Hessian2Input input = new Hessian2Input();
+        input.setSerializerFactory(SERIALIZER_FACTORY);
+        return input;
+    });
+
+    @Override
+    public byte[] serialize(Object obj) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        write(obj, byteArrayOutputStream);
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        return read(new ByteArrayInputStream(bytes), clazz);
+    }
+
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        write(obj, new ByteBufOutputStream(out));
+    }
+
+    /**
+     * 只读取 in 中属于这条消息的 length 个字节，Hessian2Input 预读也不会越过消息的边界
+     */
+    @Override
+    public <T> T deserialize(ByteBuf in, int length, Class<T> clazz) {
+        T result = read(new ByteBufInputStream(in.slice(in.readerIndex(), length)), clazz);
+        in.skipBytes(length);
+        return result;
+    }
+
+    private void write(Object obj, OutputStream os) {
+        Hessian2Output output = outputThreadLocal.get();
+        output.init(os);
+        try {
+            output.writeObject(obj);
+            output.flush();
+        } catch (IOException | RuntimeException e) {
+            log.error("Serialization failed", e);
+            throw new SerializeException("Serialization failed", e);
+        } finally {
+            output.free(); // 不再引用 os
+        }
+    }
+
+    private <T> T read(InputStream is, Class<T> clazz) {
+        Hessian2Input input = inputThreadLocal.get();
+        input.init(is);
+        try {
+            return clazz.cast(input.readObject(clazz));
+        } catch (IOException | RuntimeException e) {
+            // init 不会清掉预读的数据，读取失败后缓冲区中可能还有剩余，丢弃这个 Hessian2Input
+            inputThreadLocal.remove();
+            log.error("Deserialization failed", e);
+            throw new SerializeException("Deserialization failed", e);
+        }
+    }
+}
@@ -1,10 +1,18 @@
 package org.xu.serialize.kryo;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.KryoBufferOverflowException;
 import com.esotericsoftware.kryo.io.Output;
+import io.netty.buffer.ByteBuf;
 import lombok.extern.slf4j.Slf4j;
 import org.xu.exception.SerializeException;
+import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.RpcCompactRequest;
+import org.xu.remoting.dto.RpcHandshake;
 import org.xu.remoting.dto.RpcRequest;
 import org.xu.remoting.dto.RpcResponse;
 import org.xu.serialize.Serializer;
@@ -12,6 +20,7 @@ import org.xu.serialize.Serializer;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Kryo序列化
@@ -19,6 +28,9 @@ import java.io.IOException;
 @Slf4j
 public class KryoSerializer implements Serializer {
 
+    private static final int INITIAL_BUFFER_SIZE = 256; // 直接写入 ByteBuf 时，第一次预留的最小可写空间
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0); // 用完后替换掉 Input/Output 持有的 ByteBuffer，避免线程长期引用 ByteBuf 的内存
+
     /**
      * 由于 Kryo 不是线程安全的，所以需要使用 ThreadLocal 存储
      */
@@ -27,9 +39,17 @@ public class KryoSerializer implements Serializer {
         kryo.setRegistrationRequired(false);
         kryo.register(RpcResponse.class);
         kryo.register(RpcRequest.class);
+        kryo.register(RpcCompactRequest.class);
+        kryo.register(RpcHandshake.class);
         return kryo;
     });
 
+    /**
+     * 直接包装 ByteBuf 内存的 Output/Input，每个线程复用一个，避免每次创建
+     */
+    private final ThreadLocal<ByteBufferOutput> outputThreadLocal = ThreadLocal.withInitial(ByteBufferOutput::new);
+    private final ThreadLocal<ByteBufferInput> inputThreadLocal = ThreadLocal.withInitial(ByteBufferInput::new);
+
     @Override
     public byte[] serialize(Object obj) {
         try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
@@ -59,4 +79,59 @@ public class KryoSerializer implements Serializer {
             throw new SerializeException("Deserialization failed", e);
         }
     }
+
+    /**
+     * 直接把对象写进 out 的内存（nioBuffer 是 ByteBuf 内存的视图，不会拷贝）。
+     * 可写空间不够时 Kryo 抛出溢出异常，扩容 out 后重新写一次
+     */
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        Kryo kryo = kryoThreadLocal.get();
+        ByteBufferOutput output = outputThreadLocal.get();
+        int writerIndex = out.writerIndex();
+        int required = Math.max(out.writableBytes(), INITIAL_BUFFER_SIZE);
+        try {
+            while (true) {
+                out.ensureWritable(required);
+                ByteBuffer nioBuffer = out.nioBuffer(writerIndex, out.writableBytes());
+                // 最大容量等于当前容量，Kryo 就不会自己分配新的 ByteBuffer
+                output.setBuffer(nioBuffer, nioBuffer.capacity());
+                try {
+                    kryo.writeObject(output, obj);
+                    out.writerIndex(writerIndex + output.position());
+                    return;
+                } catch (KryoBufferOverflowException e) {
+                    if (out.writableBytes() >= RpcConstants.MAX_FRAME_LENGTH) {
+                        throw new SerializeException("Serialization failed, object is larger than max frame length", e);
+                    }
+                    required = out.writableBytes() << 1;
+                }
+            }
+        } catch (KryoException e) {
+            log.error("Serialization failed", e);
+            throw new SerializeException("Serialization failed", e);
+        } finally {
+            output.setBuffer(EMPTY_BUFFER, 0);
+        }
+    }
+
+    /**
+     * 直接从 in 的内存中反序列化，不拷贝出 byte 数组
+     */
+    @Override
+    public <T> T deserialize(ByteBuf in, int length, Class<T> clazz) {
+        Kryo kryo = kryoThreadLocal.get();
+        ByteBufferInput input = inputThreadLocal.get();
+        try {
+            input.setBuffer(in.nioBuffer(in.readerIndex(), length));
+            T result = kryo.readObject(input, clazz);
+            in.skipBytes(length);
+            return result;
+        } catch (KryoException e) {
+            log.error("Deserialization failed", e);
+            throw new SerializeException("Deserialization failed", e);
+        } finally {
+            input.setBuffer(EMPTY_BUFFER);
+        }
+    }
 }
@@ -0,0 +1,174 @@
+package org.xu.serialize.protostuff;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.protostuff.CollectionSchema;
+import io.protostuff.LinkedBuffer;
+import io.protostuff.MapSchema;
+import io.protostuff.ProtostuffIOUtil;
+import io.protostuff.Schema;
+import io.protostuff.runtime.DefaultIdStrategy;
+import io.protostuff.runtime.RuntimeEnv;
+import io.protostuff.runtime.RuntimeSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.xu.exception.SerializeException;
+import org.xu.serialize.Serializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Protostuff序列化
+ * <p>
+ * 按 protobuf 的编码格式写字段，字段按编号读写，新增字段的一方和旧版本的一方可以互相读取。
+ * Schema 由 {@link RuntimeSchema} 根据类的字段生成并缓存，Object 类型的字段（如参数、返回值）会带上实际类型。
+ * <p>
+ * JDK 的不可变集合（List.of、Map.of 等）无法按原类型创建，反序列化为 ArrayList、HashSet、HashMap；
+ * JDK 17 以上使用 Collections.unmodifiableXxx 等包装集合时，需要 --add-opens java.base/java.util=ALL-UNNAMED
+ */
+@Slf4j
+public class ProtostuffSerializer implements Serializer {
+
+    private static final int BUFFER_SIZE = 512; // LinkedBuffer 每一段的大小
+
+    static {
+        DefaultIdStrategy idStrategy = (DefaultIdStrategy) RuntimeEnv.ID_STRATEGY;
+        for (String name : new String[]{"List12", "ListN", "SubList"}) {
+            registerCollection(idStrategy, name, ArrayList::new);
+        }
+        for (String name : new String[]{"Set12", "SetN"}) {
+            registerCollection(idStrategy, name, HashSet::new);
+        }
+        for (String name : new String[]{"Map1", "MapN"}) {
+            Class<?> type = immutableCollectionClass(name);
+            if (type != null) {
+                idStrategy.registerMap(new MapSchema.MessageFactory() {
+                    @Override
+                    public <K, V> Map<K, V> newMessage() {
+                        return new HashMap<>();
+                    }
+
+                    @Override
+                    public Class<?> typeClass() {
+                        return type;
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 序列化时暂存数据的 LinkedBuffer，每个线程复用一个，用完后 clear
+     */
+    private final ThreadLocal<LinkedBuffer> bufferThreadLocal = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(BUFFER_SIZE));
+
+    @Override
+    public byte[] serialize(Object obj) {
+        LinkedBuffer buffer = bufferThreadLocal.get();
+        try {
+            return ProtostuffIOUtil.toByteArray(obj, schemaOf(obj), buffer);
+        } catch (RuntimeException e) {
+            log.error("Serialization failed", e);
+            throw new SerializeException("Serialization failed", e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        try {
+            Schema<T> schema = RuntimeSchema.getSchema(clazz);
+            T message = schema.newMessage();
+            ProtostuffIOUtil.mergeFrom(bytes, message, schema);
+            return message;
+        } catch (RuntimeException e) {
+            log.error("Deserialization failed", e);
+            throw new SerializeException("Deserialization failed", e);
+        }
+    }
+
+    /**
+     * 直接写入 out，LinkedBuffer 写满一段就写进 out，不生成中间的 byte 数组
+     */
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        LinkedBuffer buffer = bufferThreadLocal.get();
+        try {
+            ProtostuffIOUtil.writeTo(new ByteBufOutputStream(out), obj, schemaOf(obj), buffer);
+        } catch (IOException | RuntimeException e) {
+            log.error("Serialization failed", e);
+            throw new SerializeException("Serialization failed", e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * 堆内存直接在底层数组上读取，直接内存通过流读取，都不拷贝出 byte 数组
+     */
+    @Override
+    public <T> T deserialize(ByteBuf in, int length, Class<T> clazz) {
+        try {
+            Schema<T> schema = RuntimeSchema.getSchema(clazz);
+            T message = schema.newMessage();
+            if (in.hasArray()) {
+                ProtostuffIOUtil.mergeFrom(in.array(), in.arrayOffset() + in.readerIndex(), length, message, schema);
+            } else {
+                LinkedBuffer buffer = bufferThreadLocal.get();
+                try {
+                    ProtostuffIOUtil.mergeFrom(new ByteBufInputStream(in.slice(in.readerIndex(), length)), message, schema, buffer);
+                } finally {
+                    buffer.clear();
+                }
+            }
+            in.skipBytes(length);
+            return message;
+        } catch (IOException | RuntimeException e) {
+            log.error("Deserialization failed", e);
+            throw new SerializeException("Deserialization failed", e);
+        }
+    }
+
+    /**
+     * 不可变集合按名字找到对应的类后注册，反序列化时用 factory 创建可变的集合
+     */
+    private static void registerCollection(DefaultIdStrategy idStrategy, String name, Supplier<Collection<Object>> factory) {
+        Class<?> type = immutableCollectionClass(name);
+        if (type == null) {
+            return;
+        }
+        idStrategy.registerCollection(new CollectionSchema.MessageFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <V> Collection<V> newMessage() {
+                return (Collection<V>) factory.get();
+            }
+
+            @Override
+            public Class<?> typeClass() {
+                return type;
+            }
+        });
+    }
+
+    private static Class<?> immutableCollectionClass(String name) {
+        try {
+            return Class.forName("java.util.ImmutableCollections$" + name);
+        } catch (ClassNotFoundException e) {
+            // 不同版本的 JDK 实现类不同，没有的不注册
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Schema<Object> schemaOf(Object obj) {
+        return (Schema<Object>) RuntimeSchema.getSchema(obj.getClass());
+    }
+}
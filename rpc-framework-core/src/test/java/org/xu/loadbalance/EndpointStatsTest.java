@@ -0,0 +1,79 @@
+package org.xu.loadbalance;
+
+import junit.framework.TestCase;
+import org.xu.loadbalance.loadbalancer.P2cEwmaLoadBalance;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.remoting.dto.RpcRequest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应时间的衰减和还没有响应时间的地址的负载，以及 P2C 按负载选择的结果
+ */
+public class EndpointStatsTest extends TestCase {
+
+    private static final int SELECTIONS = 100;
+
+    private final LoadBalance loadBalance = new P2cEwmaLoadBalance();
+    private final RpcRequest rpcRequest = RpcRequest.builder().interfaceName("org.xu.StatsService").group("").version("").build();
+    private ServiceEndpoint slow;
+    private ServiceEndpoint fast;
+
+    @Override
+    protected void setUp() {
+        // 每个测试使用不同的端口，统计是进程内共享的
+        int port = 30_000 + Math.abs(getName().hashCode() % 10_000);
+        slow = ServiceEndpoint.of("127.0.0.1:" + port);
+        fast = ServiceEndpoint.of("127.0.0.1:" + (port + 1));
+    }
+
+    @Override
+    protected void tearDown() {
+        EndpointStats.remove(slow.getAddress());
+        EndpointStats.remove(fast.getAddress());
+    }
+
+    public void testSlowThenIdleEndpointIsPickedAgain() {
+        long now = System.nanoTime();
+        record(fast, TimeUnit.MILLISECONDS.toNanos(1), now);
+        record(slow, TimeUnit.SECONDS.toNanos(1), now);
+        assertEquals(0, countSelected(slow));
+
+        // 慢响应之后两分钟没有新样本，读取时衰减，负载低于正常响应的地址
+        EndpointStats.remove(slow.getAddress());
+        record(slow, TimeUnit.SECONDS.toNanos(1), now - TimeUnit.MINUTES.toNanos(2));
+        assertTrue(EndpointStats.of(slow.getAddress()).getLoad(now) < EndpointStats.of(fast.getAddress()).getLoad(now));
+        assertTrue(countSelected(slow) > 0);
+    }
+
+    public void testUnmeasuredEndpointWithPendingRequestsLoses() {
+        record(fast, TimeUnit.SECONDS.toNanos(1), System.nanoTime());
+        EndpointStats unmeasured = EndpointStats.of(slow.getAddress());
+        // 没有未返回的请求时先得到请求
+        assertEquals(0D, unmeasured.getLoad());
+        assertEquals(SELECTIONS, countSelected(slow));
+
+        // 请求还没有返回（比如服务端卡住），不再分到请求
+        unmeasured.begin();
+        assertTrue(unmeasured.getLoad() > EndpointStats.of(fast.getAddress()).getLoad());
+        assertEquals(0, countSelected(slow));
+        unmeasured.abort();
+    }
+
+    private static void record(ServiceEndpoint serviceEndpoint, long latencyNanos, long nowNanos) {
+        EndpointStats endpointStats = EndpointStats.of(serviceEndpoint.getAddress());
+        endpointStats.begin();
+        endpointStats.end(latencyNanos, nowNanos);
+    }
+
+    private int countSelected(ServiceEndpoint target) {
+        int count = 0;
+        for (int i = 0; i < SELECTIONS; i++) {
+            if (loadBalance.selectServiceAddress(List.of(slow, fast), rpcRequest).equals(target)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
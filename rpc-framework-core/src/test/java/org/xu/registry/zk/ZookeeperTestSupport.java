@@ -0,0 +1,44 @@
+package org.xu.registry.zk;
+
+import org.apache.curator.test.TestingServer;
+import org.xu.enums.RpcConfigEnum;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * 测试使用的进程内 zookeeper 服务端
+ * <p>
+ * CuratorUtils 的 zk 客户端是进程内唯一的，所有测试共用一个服务端，第一次使用时启动，进程退出时关闭
+ */
+public final class ZookeeperTestSupport {
+    private static TestingServer server;
+
+    private ZookeeperTestSupport() {
+    }
+
+    /**
+     * 启动服务端（已经启动时直接返回），并让 CuratorUtils 连接它
+     */
+    public static synchronized String start() throws Exception {
+        if (server == null) {
+            server = new TestingServer(true);
+            System.setProperty(RpcConfigEnum.ZK_ADDRESS.getPropertyValue(), server.getConnectString());
+            System.setProperty(RpcConfigEnum.REGISTRY.getPropertyValue(), "zk");
+        }
+        return server.getConnectString();
+    }
+
+    /**
+     * 等待条件成立，超时返回 false
+     */
+    public static boolean await(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,100 @@
+package org.xu.registry.zk.util;
+
+import junit.framework.TestCase;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.data.Stat;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.registry.zk.ZkServiceRegistryImpl;
+import org.xu.registry.zk.ZookeeperTestSupport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务地址注册为临时节点：属于注册它的会话，会话结束时删除，会话过期重连后重新创建
+ */
+public class CuratorUtilsTest extends TestCase {
+
+    private CuratorFramework zkClient;
+
+    @Override
+    protected void setUp() throws Exception {
+        ZookeeperTestSupport.start();
+        zkClient = CuratorUtils.getZkClient();
+    }
+
+    public void testRegisterCreatesEphemeralNodeWithMetadata() throws Exception {
+        String rpcServiceName = "org.xu.EphemeralServicegroupv1";
+        ServiceEndpoint serviceEndpoint = new ServiceEndpoint("127.0.0.1:20001", 300, 0, 1L);
+        ZkServiceRegistryImpl serviceRegistry = new ZkServiceRegistryImpl();
+        serviceRegistry.registerService(rpcServiceName, serviceEndpoint);
+        try {
+            String path = pathOf(rpcServiceName, serviceEndpoint);
+            Stat stat = zkClient.checkExists().forPath(path);
+            assertNotNull(stat);
+            assertEquals(sessionIdOf(zkClient), stat.getEphemeralOwner());
+            ServiceEndpoint registered = ServiceEndpoint.parse(serviceEndpoint.getAddress(), zkClient.getData().forPath(path));
+            assertEquals(serviceEndpoint, registered);
+        } finally {
+            serviceRegistry.unregisterService(rpcServiceName, serviceEndpoint);
+        }
+        assertNull(zkClient.checkExists().forPath(pathOf(rpcServiceName, serviceEndpoint)));
+    }
+
+    public void testNodeDisappearsWhenSessionCloses() throws Exception {
+        String path = CuratorUtils.ZK_REGISTER_ROOT_PATH + "/org.xu.SessionService/127.0.0.1:20002";
+        // 另一个会话代表另一个服务端进程，进程退出时会话关闭
+        CuratorFramework providerClient = CuratorFrameworkFactory.newClient(ZookeeperTestSupport.start(), new RetryOneTime(100));
+        providerClient.start();
+        try {
+            assertTrue(providerClient.blockUntilConnected(10, TimeUnit.SECONDS));
+            CuratorUtils.createEphemeralNode(providerClient, path, new byte[0]);
+            assertEquals(sessionIdOf(providerClient), zkClient.checkExists().forPath(path).getEphemeralOwner());
+        } finally {
+            providerClient.close();
+        }
+        assertTrue(ZookeeperTestSupport.await(() -> !exists(path), 10_000));
+        CuratorUtils.removeNode(zkClient, path); // 不再在重连时重新创建
+    }
+
+    public void testNodeRecreatedAfterSessionExpiry() throws Exception {
+        String rpcServiceName = "org.xu.ExpiryService";
+        ServiceEndpoint serviceEndpoint = ServiceEndpoint.of("127.0.0.1:20003");
+        ZkServiceRegistryImpl serviceRegistry = new ZkServiceRegistryImpl();
+        serviceRegistry.registerService(rpcServiceName, serviceEndpoint);
+        try {
+            String path = pathOf(rpcServiceName, serviceEndpoint);
+            long oldSessionId = sessionIdOf(zkClient);
+            zkClient.getZookeeperClient().getZooKeeper().getTestable().injectSessionExpiration();
+            // 过期后节点被删除，重连后由新的会话重新创建
+            assertTrue(ZookeeperTestSupport.await(() -> {
+                Stat stat = statOf(path);
+                return stat != null && stat.getEphemeralOwner() != oldSessionId;
+            }, 20_000));
+            assertEquals(sessionIdOf(zkClient), zkClient.checkExists().forPath(path).getEphemeralOwner());
+        } finally {
+            serviceRegistry.unregisterService(rpcServiceName, serviceEndpoint);
+        }
+    }
+
+    private static String pathOf(String rpcServiceName, ServiceEndpoint serviceEndpoint) {
+        return CuratorUtils.ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName + "/" + serviceEndpoint.getAddress();
+    }
+
+    private static long sessionIdOf(CuratorFramework client) throws Exception {
+        return client.getZookeeperClient().getZooKeeper().getSessionId();
+    }
+
+    private boolean exists(String path) {
+        return statOf(path) != null;
+    }
+
+    private Stat statOf(String path) {
+        try {
+            return zkClient.checkExists().forPath(path);
+        } catch (Exception e) {
+            return null; // 重连期间访问失败，下次再查
+        }
+    }
+}
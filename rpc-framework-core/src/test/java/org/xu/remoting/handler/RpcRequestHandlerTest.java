@@ -0,0 +1,103 @@
+package org.xu.remoting.handler;
+
+import junit.framework.TestCase;
+import org.xu.config.RpcServiceConfig;
+import org.xu.enums.RpcConfigEnum;
+import org.xu.enums.RpcResponseCodeEnum;
+import org.xu.factory.SingletonFactory;
+import org.xu.provider.impl.ZkServiceProviderImpl;
+import org.xu.remoting.dto.RpcRequest;
+import org.xu.remoting.dto.RpcResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * rpc.server.service.max.concurrency：超过上限的请求在平台线程中直接拒绝，在虚拟线程中等待许可
+ */
+public class RpcRequestHandlerTest extends TestCase {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    public interface Blocking {
+        String call(String name);
+    }
+
+    static class BlockingImpl implements Blocking {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String call(String name) {
+            entered.countDown();
+            try {
+                release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return name;
+        }
+    }
+
+    private BlockingImpl service;
+    private RpcRequestHandler rpcRequestHandler;
+    private RpcRequest rpcRequest;
+
+    @Override
+    protected void setUp() throws Exception {
+        service = new BlockingImpl();
+        RpcServiceConfig rpcServiceConfig = RpcServiceConfig.builder()
+                .group("concurrency").version(getName()).service(service).build();
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(rpcServiceConfig);
+        System.setProperty(RpcConfigEnum.SERVICE_MAX_CONCURRENCY.getPropertyValue(), "1");
+        try {
+            rpcRequestHandler = new RpcRequestHandler();
+        } finally {
+            System.clearProperty(RpcConfigEnum.SERVICE_MAX_CONCURRENCY.getPropertyValue());
+        }
+        rpcRequest = RpcRequest.builder()
+                .interfaceName(Blocking.class.getCanonicalName())
+                .methodName("call")
+                .parameters(new Object[]{"x"})
+                .paramTypes(new Class<?>[]{String.class})
+                .group("concurrency")
+                .version(getName())
+                .build();
+    }
+
+    public void testPlatformThreadRejectsWhenServiceIsSaturated() throws Exception {
+        CompletableFuture<RpcResponse<Object>> first = processOn(false);
+        assertTrue(service.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        RpcResponse<Object> rejected = processOn(false).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(RpcResponseCodeEnum.OVERLOADED.getCode(), (int) rejected.getCode());
+
+        service.release.countDown();
+        assertEquals("x", first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getData());
+    }
+
+    public void testVirtualThreadWaitsForPermit() throws Exception {
+        CompletableFuture<RpcResponse<Object>> first = processOn(false);
+        assertTrue(service.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        CompletableFuture<RpcResponse<Object>> waiting = processOn(true);
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+
+        service.release.countDown();
+        assertEquals("x", first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getData());
+        assertEquals("x", waiting.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getData());
+    }
+
+    private CompletableFuture<RpcResponse<Object>> processOn(boolean virtual) {
+        CompletableFuture<RpcResponse<Object>> response = new CompletableFuture<>();
+        Runnable task = () -> rpcRequestHandler.process(rpcRequest, 0, response::complete);
+        if (virtual) {
+            Thread.ofVirtual().start(task);
+        } else {
+            Thread.ofPlatform().daemon().start(task);
+        }
+        return response;
+    }
+}
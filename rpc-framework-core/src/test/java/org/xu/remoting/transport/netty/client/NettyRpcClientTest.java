@@ -0,0 +1,68 @@
+package org.xu.remoting.transport.netty.client;
+
+import junit.framework.TestCase;
+import org.xu.registry.ServiceEndpoint;
+import org.xu.registry.zk.ZkServiceRegistryImpl;
+import org.xu.registry.zk.ZookeeperTestSupport;
+import org.xu.registry.zk.util.CuratorUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * 客户端跟随注册中心的地址变化：新增的地址提前建立连接，下线的地址关闭连接
+ */
+public class NettyRpcClientTest extends TestCase {
+
+    private static final int TIMEOUT_MILLIS = 10_000;
+
+    private ServerSocket serverSocket; // 代替服务端，只接收连接，不处理请求
+    private NettyRpcClient nettyRpcClient;
+
+    @Override
+    protected void setUp() throws Exception {
+        ZookeeperTestSupport.start();
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        serverSocket.setSoTimeout(TIMEOUT_MILLIS);
+        nettyRpcClient = new NettyRpcClient();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        nettyRpcClient.close();
+        serverSocket.close();
+    }
+
+    public void testPrewarmAndCloseOnRemoval() throws Exception {
+        String rpcServiceName = "org.xu.PrewarmService";
+        // 查找过一次的服务才会监听地址变化
+        assertTrue(CuratorUtils.getChildrenNodes(CuratorUtils.getZkClient(), rpcServiceName).isEmpty());
+
+        ServiceEndpoint serviceEndpoint = ServiceEndpoint.of("127.0.0.1:" + serverSocket.getLocalPort());
+        ZkServiceRegistryImpl serviceRegistry = new ZkServiceRegistryImpl();
+        serviceRegistry.registerService(rpcServiceName, serviceEndpoint);
+        // 还没有发送请求，地址出现后就建立连接
+        try (Socket accepted = serverSocket.accept()) {
+            accepted.setSoTimeout(TIMEOUT_MILLIS);
+            serviceRegistry.unregisterService(rpcServiceName, serviceEndpoint);
+            // 没有未返回的请求，地址下线后连接直接关闭
+            assertEquals(-1, readUntilClosed(accepted));
+        } finally {
+            serviceRegistry.unregisterService(rpcServiceName, serviceEndpoint);
+        }
+    }
+
+    /**
+     * 读到连接关闭，跳过客户端发来的数据（握手请求）
+     */
+    private static int readUntilClosed(Socket socket) throws IOException {
+        byte[] buffer = new byte[256];
+        int n;
+        do {
+            n = socket.getInputStream().read(buffer);
+        } while (n > 0);
+        return n;
+    }
+}
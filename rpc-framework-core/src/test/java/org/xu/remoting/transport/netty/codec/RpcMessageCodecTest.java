@@ -0,0 +1,92 @@
+package org.xu.remoting.transport.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import junit.framework.TestCase;
+import org.xu.enums.CompressTypeEnum;
+import org.xu.enums.SerializationTypeEnum;
+import org.xu.extension.ExtensionLoader;
+import org.xu.remoting.constants.RpcConstants;
+import org.xu.remoting.dto.LegacyRpcRequest;
+import org.xu.remoting.dto.LegacyRpcResponse;
+import org.xu.remoting.dto.RpcMessage;
+import org.xu.remoting.dto.RpcRequest;
+import org.xu.remoting.dto.RpcResponse;
+import org.xu.serialize.Serializer;
+
+/**
+ * v1 的请求按 v1 的格式解码，回复时按 v1 的格式编码，带回字符串请求id
+ */
+public class RpcMessageCodecTest extends TestCase {
+
+    private static final byte KRYO = SerializationTypeEnum.KRYO.getCode();
+
+    private final Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension("kryo");
+
+    public void testDecodeV1Request() {
+        LegacyRpcRequest legacyRpcRequest = new LegacyRpcRequest("b7c3c5a0-uuid", "org.xu.HelloService", "sayHello",
+                new Object[]{"111"}, new Class<?>[]{String.class}, "", "");
+        ByteBuf frame = v1Frame(RpcConstants.REQUEST_TYPE, 42, legacyRpcRequest);
+        try {
+            RpcMessage rpcMessage = new RpcMessageDecoder().decodeFrame(ByteBufAllocator.DEFAULT, frame);
+            assertEquals(RpcConstants.V1_VERSION, rpcMessage.getVersion());
+            assertEquals(42, rpcMessage.getRequestId());
+            assertEquals(CompressTypeEnum.NONE.getCode(), rpcMessage.getCompress()); // v1 的压缩字段不表示消息体的压缩方式
+            assertEquals("b7c3c5a0-uuid", rpcMessage.getLegacyRequestId());
+            RpcRequest rpcRequest = (RpcRequest) rpcMessage.getData();
+            assertEquals("org.xu.HelloService", rpcRequest.getInterfaceName());
+            assertEquals("sayHello", rpcRequest.getMethodName());
+            assertEquals("111", rpcRequest.getParameters()[0]);
+            assertEquals(String.class, rpcRequest.getParamTypes()[0]);
+            assertEquals(0, frame.readableBytes());
+        } finally {
+            frame.release();
+        }
+    }
+
+    public void testEncodeV1Response() {
+        RpcMessage rpcMessage = RpcMessage.builder()
+                .version(RpcConstants.V1_VERSION)
+                .messageType(RpcConstants.RESPONSE_TYPE)
+                .codec(KRYO)
+                .compress(CompressTypeEnum.NONE.getCode())
+                .requestId(42)
+                .legacyRequestId("b7c3c5a0-uuid")
+                .data(RpcResponse.success("hello")).build();
+        ByteBuf out = Unpooled.buffer();
+        try {
+            new RpcMessageEncoder().encode(ByteBufAllocator.DEFAULT, rpcMessage, out);
+            out.skipBytes(RpcConstants.MAGIC_NUMBER.length);
+            assertEquals(RpcConstants.V1_VERSION, out.readByte());
+            assertEquals(out.readableBytes() + RpcConstants.MAGIC_NUMBER.length + 1, out.readInt());
+            assertEquals(RpcConstants.RESPONSE_TYPE, out.readByte());
+            assertEquals(KRYO, out.readByte());
+            assertEquals(CompressTypeEnum.GZIP.getCode(), out.readByte()); // 和 v1 一样写 gzip，消息体没有压缩
+            assertEquals(42, out.readInt());
+            LegacyRpcResponse<?> legacyRpcResponse = serializer.deserialize(out, out.readableBytes(), LegacyRpcResponse.class);
+            assertEquals("b7c3c5a0-uuid", legacyRpcResponse.getRequestId());
+            assertEquals(RpcResponse.success("hello").getCode(), legacyRpcResponse.getCode());
+            assertEquals("hello", legacyRpcResponse.getData());
+        } finally {
+            out.release();
+        }
+    }
+
+    /**
+     * 按 v1 客户端的方式编码一帧：压缩字段写 gzip，消息体不压缩
+     */
+    private ByteBuf v1Frame(byte messageType, int requestId, Object body) {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeBytes(RpcConstants.MAGIC_NUMBER);
+        frame.writeByte(RpcConstants.V1_VERSION);
+        frame.writeInt(0);
+        frame.writeByte(messageType);
+        frame.writeByte(KRYO);
+        frame.writeByte(CompressTypeEnum.GZIP.getCode());
+        frame.writeInt(requestId);
+        serializer.serialize(body, frame);
+        frame.setInt(RpcConstants.MAGIC_NUMBER.length + 1, frame.writerIndex());
+        return frame;
+    }
+}
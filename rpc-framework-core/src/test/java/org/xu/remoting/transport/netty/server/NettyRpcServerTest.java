@@ -0,0 +1,66 @@
+package org.xu.remoting.transport.netty.server;
+
+import junit.framework.TestCase;
+import org.apache.curator.framework.CuratorFramework;
+import org.xu.config.RpcServiceConfig;
+import org.xu.registry.zk.ZookeeperTestSupport;
+import org.xu.registry.zk.util.CuratorUtils;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * 服务端发布的地址在服务端关闭时从注册中心删除
+ */
+public class NettyRpcServerTest extends TestCase {
+
+    public interface Greeting {
+        String hello(String name);
+    }
+
+    static class GreetingImpl implements Greeting {
+        @Override
+        public String hello(String name) {
+            return "hello " + name;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        ZookeeperTestSupport.start();
+    }
+
+    public void testStopRemovesRegisteredNode() throws Exception {
+        RpcServiceConfig rpcServiceConfig = RpcServiceConfig.builder()
+                .group("stop").version("1").service(new GreetingImpl()).build();
+        String host = InetAddress.getLocalHost().getHostAddress();
+        String path = CuratorUtils.ZK_REGISTER_ROOT_PATH + "/" + rpcServiceConfig.getRpcServiceName()
+                + "/" + host + ":" + NettyRpcServer.PORT;
+        CuratorFramework zkClient = CuratorUtils.getZkClient();
+
+        NettyRpcServer nettyRpcServer = new NettyRpcServer();
+        nettyRpcServer.registerService(rpcServiceConfig);
+        assertNotNull(zkClient.checkExists().forPath(path));
+        Thread serverThread = new Thread(nettyRpcServer::start, "netty-rpc-server-test");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        try {
+            assertTrue(ZookeeperTestSupport.await(() -> isListening(host, NettyRpcServer.PORT), 10_000));
+        } finally {
+            nettyRpcServer.stop();
+        }
+        assertNull(zkClient.checkExists().forPath(path));
+        serverThread.join(20_000);
+        assertFalse(serverThread.isAlive());
+    }
+
+    private static boolean isListening(String host, int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), 500);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
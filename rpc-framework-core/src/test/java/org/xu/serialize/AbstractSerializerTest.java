@@ -0,0 +1,70 @@
+package org.xu.serialize;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import junit.framework.TestCase;
+import org.xu.remoting.dto.RpcRequest;
+import org.xu.remoting.dto.RpcResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 序列化方式的往返测试：参数、返回值中有 JDK 的不可变集合（List.of、Map.of 等）时，反序列化出内容相同的集合
+ */
+public abstract class AbstractSerializerTest extends TestCase {
+
+    protected abstract Serializer newSerializer();
+
+    public void testRequestWithImmutableCollections() {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .interfaceName("org.xu.HelloService")
+                .methodName("hello")
+                .parameters(new Object[]{List.of("a", "b", "c"), Map.of("k1", 1, "k2", 2), List.of(1), Set.of("x"), List.of()})
+                .paramTypes(new Class<?>[]{List.class, Map.class, List.class, Set.class, List.class})
+                .group("g")
+                .version("1")
+                .timeout(300)
+                .build();
+        Serializer serializer = newSerializer();
+
+        assertRequestEquals(rpcRequest, serializer.deserialize(serializer.serialize(rpcRequest), RpcRequest.class));
+        assertRequestEquals(rpcRequest, roundTrip(serializer, rpcRequest, Unpooled.buffer(), RpcRequest.class));
+        assertRequestEquals(rpcRequest, roundTrip(serializer, rpcRequest, Unpooled.directBuffer(), RpcRequest.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testResponseWithImmutableCollections() {
+        Map<String, List<Integer>> data = Map.of("a", List.of(1, 2), "b", List.of());
+        RpcResponse<Object> rpcResponse = RpcResponse.success(data);
+        Serializer serializer = newSerializer();
+
+        RpcResponse<Object> fromBytes = serializer.deserialize(serializer.serialize(rpcResponse), RpcResponse.class);
+        assertEquals(rpcResponse.getCode(), fromBytes.getCode());
+        assertEquals(data, fromBytes.getData());
+        RpcResponse<Object> fromBuffer = roundTrip(serializer, rpcResponse, Unpooled.directBuffer(), RpcResponse.class);
+        assertEquals(rpcResponse.getCode(), fromBuffer.getCode());
+        assertEquals(data, fromBuffer.getData());
+    }
+
+    private static <T> T roundTrip(Serializer serializer, Object obj, ByteBuf buf, Class<T> clazz) {
+        try {
+            serializer.serialize(obj, buf);
+            int length = buf.readableBytes();
+            buf.writeByte(0x7f); // 消息之后的数据不能被读取
+            T result = serializer.deserialize(buf, length, clazz);
+            assertEquals(1, buf.readableBytes());
+            return result;
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static void assertRequestEquals(RpcRequest expected, RpcRequest actual) {
+        assertEquals(expected.getRpcServiceName(), actual.getRpcServiceName());
+        assertEquals(expected.getMethodSignature(), actual.getMethodSignature());
+        assertEquals(expected.getTimeout(), actual.getTimeout());
+        assertEquals(List.of(expected.getParameters()), List.of(actual.getParameters()));
+    }
+}
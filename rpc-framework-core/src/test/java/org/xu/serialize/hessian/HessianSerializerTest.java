@@ -0,0 +1,12 @@
+package org.xu.serialize.hessian;
+
+import org.xu.serialize.AbstractSerializerTest;
+import org.xu.serialize.Serializer;
+
+public class HessianSerializerTest extends AbstractSerializerTest {
+
+    @Override
+    protected Serializer newSerializer() {
+        return new HessianSerializer();
+    }
+}
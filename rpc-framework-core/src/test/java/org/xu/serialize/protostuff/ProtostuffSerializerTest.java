@@ -0,0 +1,12 @@
+package org.xu.serialize.protostuff;
+
+import org.xu.serialize.AbstractSerializerTest;
+import org.xu.serialize.Serializer;
+
+public class ProtostuffSerializerTest extends AbstractSerializerTest {
+
+    @Override
+    protected Serializer newSerializer() {
+        return new ProtostuffSerializer();
+    }
+}